@@ -1,7 +1,10 @@
 package com.k4j.lpg;
 
 import com.k4j.lpg.controllers.LoginController;
+import com.k4j.lpg.utils.BackgroundTasks;
 import com.k4j.lpg.utils.Config;
+import com.k4j.lpg.utils.NetworkChecker;
+import com.k4j.lpg.utils.SharedHttpClient;
 import com.k4j.lpg.utils.SessionManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -10,7 +13,9 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
 import javafx.scene.control.Alert;
+import com.k4j.lpg.services.ApiService;
 import com.k4j.lpg.services.LocalDbService;
+import com.k4j.lpg.services.OutboxReplayer;
 
 import org.slf4j.Logger;
 import java.net.URL;
@@ -32,6 +37,13 @@ public void start(Stage stage) {
         LocalDbService.initialize();
         logger.info("Local database initialized");
         
+        // Push offline product edits whenever the server is reachable again; registered
+        // before the monitor starts so its first offline-to-online change is not missed
+        OutboxReplayer.start();
+        
+        // Track connectivity in the background so API calls never wait on it
+        NetworkChecker.start();
+        
         // Rest of startup code...
         if (SessionManager.getInstance().hasValidSession()) {
             loadDashboard();
@@ -47,6 +59,18 @@ public void start(Stage stage) {
     }
 }
     
+    @Override
+    public void stop() {
+        // Stop background work and release pooled database connections
+        BackgroundTasks.shutdown();
+        NetworkChecker.stop();
+        OutboxReplayer.shutdown();
+        ApiService.shutdown();
+        SharedHttpClient.shutdown();
+        LocalDbService.shutdown();
+        logger.info("Application stopped");
+    }
+
     /**
      * Show the login screen
      */
@@ -4,9 +4,13 @@ import com.k4j.lpg.Main;
 import com.k4j.lpg.models.Product;
 import com.k4j.lpg.models.User;
 import com.k4j.lpg.services.ApiService;
+import com.k4j.lpg.services.CategoryTotals;
+import com.k4j.lpg.services.ValuationReport;
+import com.k4j.lpg.utils.BackgroundTasks;
 import com.k4j.lpg.utils.Config;
 import com.k4j.lpg.utils.SessionManager;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.collections.FXCollections;
@@ -21,10 +25,12 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -37,6 +43,8 @@ public class AdminDashboardController {
     @FXML private ImageView headerLogoImageView;
     @FXML private Label totalProductsLabel;
     @FXML private Label lowStockLabel;
+    @FXML private Label outOfStockLabel;
+    @FXML private Label stockValueLabel;
     @FXML private Label totalUsersLabel;
     
     @FXML private TextField searchField;
@@ -47,9 +55,8 @@ public class AdminDashboardController {
     @FXML private TableColumn<Product, Double> priceColumn;
     @FXML private TableColumn<Product, Void> actionsColumn;
     
-    private final ObservableList<Product> productsList = FXCollections.observableArrayList();
+    private ProductTableController products;
     private final ObservableList<User> usersList = FXCollections.observableArrayList();
-    private FilteredList<Product> filteredProducts;
     
     @FXML
     public void initialize() {
@@ -62,17 +69,15 @@ public class AdminDashboardController {
         // Setup table columns
         setupProductsTable();
         
-        // Setup search
-        filteredProducts = new FilteredList<>(productsList, p -> true);
-        productsTable.setItems(filteredProducts);
+        // Paging, sorting, search and the header cards
+        priceColumn.setSortable(false);
+        products = new ProductTableController("admin", productsTable, searchField, categoryColumn, quantityColumn,
+                totalProductsLabel, lowStockLabel, outOfStockLabel, stockValueLabel, this::showError);
+        products.setOnSummary(summary -> totalUsersLabel.setText(String.valueOf(summary.getUsers())));
         
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            filterProducts(newValue);
-        });
-        
-        // Load data
-        loadProducts();
-        loadUsers();
+        // Load data; the header cards come from one aggregate query before the table fills
+        products.loadSummary();
+        products.loadProducts();
     }
 
     private void loadHeaderLogo() {
@@ -183,11 +188,31 @@ public class AdminDashboardController {
         
         // Row factory to highlight low stock using per-product threshold (set style directly)
         productsTable.setRowFactory(tv -> new TableRow<>() {
+            // Products are updated in place on refresh, so restyle when their stock changes
+            private final InvalidationListener restyle = observable -> applyStyle(getItem());
+            private Product observed;
+            
             @Override
             protected void updateItem(Product product, boolean empty) {
                 super.updateItem(product, empty);
-
-                if (empty || product == null) {
+                
+                Product next = empty ? null : product;
+                if (next != observed) {
+                    if (observed != null) {
+                        observed.quantityProperty().removeListener(restyle);
+                        observed.lowStockThresholdProperty().removeListener(restyle);
+                    }
+                    if (next != null) {
+                        next.quantityProperty().addListener(restyle);
+                        next.lowStockThresholdProperty().addListener(restyle);
+                    }
+                    observed = next;
+                }
+                applyStyle(next);
+            }
+            
+            private void applyStyle(Product product) {
+                if (product == null) {
                     setStyle("");
                 } else {
                     if (product.isLowStock()) {
@@ -201,80 +226,6 @@ public class AdminDashboardController {
         });
     }
     
-    private void loadProducts() {
-        Task<ApiService.ApiResponse<java.util.List<Product>>> task = new Task<>() {
-            @Override
-            protected ApiService.ApiResponse<java.util.List<Product>> call() {
-                return ApiService.getProducts();
-            }
-        };
-        
-        task.setOnSucceeded(event -> {
-            ApiService.ApiResponse<java.util.List<Product>> response = task.getValue();
-            
-            if (response.isSuccess()) {
-                productsList.clear();
-                productsList.addAll(response.getData());
-                updateStatistics();
-                logger.info("Products loaded: " + productsList.size());
-            } else {
-                showError("Failed to load products", response.getError());
-            }
-        });
-        
-        new Thread(task).start();
-    }
-    
-    private void loadUsers() {
-        Task<ApiService.ApiResponse<java.util.List<User>>> task = new Task<>() {
-            @Override
-            protected ApiService.ApiResponse<java.util.List<User>> call() {
-                return ApiService.getUsers();
-            }
-        };
-        
-        task.setOnSucceeded(event -> {
-            ApiService.ApiResponse<java.util.List<User>> response = task.getValue();
-            
-            if (response.isSuccess()) {
-                usersList.clear();
-                usersList.addAll(response.getData());
-                updateStatistics();
-                logger.info("Users loaded: " + usersList.size());
-            } else {
-                showError("Failed to load users", response.getError());
-            }
-        });
-        
-        new Thread(task).start();
-    }
-    
-    private void updateStatistics() {
-        Platform.runLater(() -> {
-            totalProductsLabel.setText(String.valueOf(productsList.size()));
-            
-            long lowStockCount = productsList.stream()
-                    .filter(Product::isLowStock)
-                    .count();
-            lowStockLabel.setText(String.valueOf(lowStockCount));
-            
-            totalUsersLabel.setText(String.valueOf(usersList.size()));
-        });
-    }
-    
-    private void filterProducts(String searchText) {
-        filteredProducts.setPredicate(product -> {
-            if (searchText == null || searchText.isEmpty()) {
-                return true;
-            }
-            
-            String lowerCaseFilter = searchText.toLowerCase();
-            
-            return product.getName().toLowerCase().contains(lowerCaseFilter) ||
-                   product.getCategory().toLowerCase().contains(lowerCaseFilter);
-        });
-    }
-    
     @FXML
     private void handleAddProduct() {
         Dialog<Product> dialog = new Dialog<>();
@@ -342,15 +293,14 @@ public class AdminDashboardController {
             ApiService.ApiResponse<Product> response = task.getValue();
             
             if (response.isSuccess()) {
-                productsList.add(response.getData());
-                updateStatistics();
+                products.add(response.getData());
                 showSuccess("Product added successfully");
             } else {
                 showError("Failed to add product", response.getError());
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.addProduct", task);
     }
     
     private void handleEditProduct(Product product) {
@@ -420,14 +370,14 @@ public class AdminDashboardController {
             ApiService.ApiResponse<Product> response = task.getValue();
             
             if (response.isSuccess()) {
-                loadProducts(); // Reload to refresh table
+                products.patch(List.of(response.getData()));
                 showSuccess("Product updated successfully");
             } else {
                 showError("Failed to update product", response.getError());
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.updateProduct", task);
     }
     
     private void handleDeleteProduct(Product product) {
@@ -454,15 +404,14 @@ public class AdminDashboardController {
             ApiService.ApiResponse<Void> response = task.getValue();
             
             if (response.isSuccess()) {
-                productsList.remove(product);
-                updateStatistics();
+                products.remove(product);
                 showSuccess("Product deleted successfully");
             } else {
                 showError("Failed to delete product", response.getError());
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.deleteProduct", task);
     }
     
     @FXML
@@ -590,10 +539,11 @@ public class AdminDashboardController {
             if (response.isSuccess()) {
                 usersList.clear();
                 usersList.addAll(response.getData());
+                totalUsersLabel.setText(String.valueOf(usersList.size()));
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.runLatest("admin.loadUsersForDialog", task);
     }
     
     private void showAddUserDialog() {
@@ -667,7 +617,7 @@ public class AdminDashboardController {
             showError("Failed to add user", task.getException().getMessage());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.addUser", task);
     }
     
     private void showEditUserDialog(User user) {
@@ -738,7 +688,7 @@ public class AdminDashboardController {
             showError("Failed to update user", task.getException().getMessage());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.updateUser", task);
     }
     
     private void confirmDeleteUser(User user) {
@@ -771,13 +721,92 @@ public class AdminDashboardController {
             showError("Failed to delete user", task.getException().getMessage());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("admin.deleteUser", task);
+    }
+    
+    @FXML
+    private void handleValuationReport() {
+        Task<ApiService.ApiResponse<ValuationReport>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<ValuationReport> call() {
+                return ApiService.getValuationReport();
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            ApiService.ApiResponse<ValuationReport> response = task.getValue();
+            
+            if (response.isSuccess()) {
+                showValuationReport(response.getData());
+            } else {
+                showError("Valuation report failed", response.getError());
+            }
+        });
+        
+        BackgroundTasks.runLatest("admin.valuationReport", task);
+    }
+    
+    private void showValuationReport(ValuationReport report) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Generated %s (%d ms)%n%n",
+                java.time.Instant.ofEpochMilli(report.getGeneratedAt()).atZone(java.time.ZoneId.systemDefault())
+                        .toLocalDateTime().withNano(0), report.getElapsedMillis()));
+        text.append(String.format("%-32s %10s %12s %18s%n", "", "Products", "Units", "Value"));
+        
+        text.append(String.format("%nBy category%n"));
+        report.getByCategory().forEach((category, totals) ->
+                appendReportLine(text, category.isEmpty() ? "(none)" : category, totals));
+        text.append(String.format("%nBy stock level%n"));
+        report.getByStockLevel().forEach((level, totals) -> appendReportLine(text, level.getLabel(), totals));
+        text.append(String.format("%n"));
+        appendReportLine(text, "Total", report.getTotal());
+        
+        TextArea area = new TextArea(text.toString());
+        area.setEditable(false);
+        area.setStyle("-fx-font-family: monospace;");
+        area.setPrefSize(760, 480);
+        
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Valuation Report");
+        dialog.setHeaderText("Stock valuation: ₱" + String.format("%,.2f", report.getTotal().getStockValue()));
+        ButtonType exportButtonType = new ButtonType("Export CSV", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(exportButtonType, ButtonType.CLOSE);
+        dialog.getDialogPane().setContent(area);
+        
+        Optional<ButtonType> result = dialog.showAndWait();
+        if (result.isPresent() && result.get() == exportButtonType) {
+            exportValuationReport(report);
+        }
+    }
+    
+    private void appendReportLine(StringBuilder text, String name, CategoryTotals totals) {
+        text.append(String.format("  %-30s %10d %12d %18s%n", name, totals.getProducts(), totals.getQuantity(),
+                String.format("₱%,.2f", totals.getStockValue())));
+    }
+    
+    private void exportValuationReport(ValuationReport report) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Valuation Report");
+        chooser.setInitialFileName("valuation-" + java.time.LocalDate.now() + ".csv");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        
+        java.io.File file = chooser.showSaveDialog(productsTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        try {
+            java.nio.file.Files.writeString(file.toPath(), report.toCsv());
+            showSuccess("Valuation report exported to " + file.getName());
+        } catch (java.io.IOException e) {
+            logger.error("Valuation report export failed", e);
+            showError("Export failed", e.getMessage());
+        }
     }
     
     @FXML
     private void handleRefresh() {
-        loadProducts();
-        loadUsers();
+        products.loadSummary();
+        products.loadProducts();
     }
     
     @FXML
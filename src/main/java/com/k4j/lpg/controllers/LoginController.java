@@ -3,6 +3,7 @@ package com.k4j.lpg.controllers;
 import com.k4j.lpg.Main;
 import com.k4j.lpg.models.User;
 import com.k4j.lpg.services.ApiService;
+import com.k4j.lpg.utils.BackgroundTasks;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
@@ -124,7 +125,7 @@ public class LoginController {
             progressIndicator.setVisible(false);
         });
         
-        new Thread(loginTask).start();
+        BackgroundTasks.run("login.signIn", loginTask);
     }
     
     private void handleDatabaseInitialization() {
@@ -179,7 +180,7 @@ public class LoginController {
             progressIndicator.setVisible(false);
         });
         
-        new Thread(initTask).start();
+        BackgroundTasks.run("login.initializeDatabase", initTask);
     }
     
     private void showError(String message) {
@@ -0,0 +1,471 @@
+package com.k4j.lpg.controllers;
+
+import com.k4j.lpg.models.Product;
+import com.k4j.lpg.services.ApiService;
+import com.k4j.lpg.services.CategoryTotals;
+import com.k4j.lpg.services.DashboardSummary;
+import com.k4j.lpg.services.OutboxReplayer;
+import com.k4j.lpg.services.ProductCounts;
+import com.k4j.lpg.services.ProductPage;
+import com.k4j.lpg.services.ProductSort;
+import com.k4j.lpg.utils.BackgroundTasks;
+import com.k4j.lpg.utils.Config;
+import com.k4j.lpg.utils.ProductListReconciler;
+import com.k4j.lpg.utils.ProductSearchIndex;
+import com.k4j.lpg.utils.ProductStatistics;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The products table shared by the admin and staff dashboards: keyset
+ * paging from SQLite, sorting, search and the KPI header cards.
+ *
+ * The table holds the pages loaded so far. While every product is loaded
+ * the header cards follow the incrementally maintained statistics model;
+ * otherwise they show the SQL aggregates from {@link ApiService#getDashboardSummary()}.
+ * Search filters the loaded rows and, while pages are missing, merges in
+ * full-text search hits from SQLite.
+ */
+public class ProductTableController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProductTableController.class);
+    
+    // Prefix of the background task keys, e.g. "admin"
+    private final String taskPrefix;
+    private final TableView<Product> productsTable;
+    private final TextField searchField;
+    private final TableColumn<Product, ?> categoryColumn;
+    private final TableColumn<Product, ?> quantityColumn;
+    private final Label totalProductsLabel;
+    private final Label lowStockLabel;
+    private final Label outOfStockLabel;
+    private final Label stockValueLabel;
+    private final BiConsumer<String, String> onError;
+    private Consumer<DashboardSummary> onSummary = summary -> { };
+    
+    private final ObservableList<Product> productsList = FXCollections.observableArrayList();
+    private final FilteredList<Product> filteredProducts = new FilteredList<>(productsList, p -> true);
+    // Ids the table is filtered to; null while showing everything
+    private Set<String> shownMatches;
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+    private final ProductStatistics statistics = new ProductStatistics(productsList);
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(Config.SEARCH_DEBOUNCE_MS));
+    
+    // Keyset paging state
+    private ProductSort sort = ProductSort.NAME;
+    private boolean descending;
+    private ProductPage.Cursor nextPage;
+    // Rows loaded through paging, not counting search hits merged in
+    private int pagedRows;
+    private boolean loadingPage;
+    private boolean productsLoaded;
+    // Latest SQL aggregates, shown while only some pages are loaded
+    private DashboardSummary summary;
+    private boolean outboxWarningShown;
+    
+    /**
+     * Take over the table, search field and header cards. The category and
+     * quantity columns map to their indexed sort and any other sortable
+     * column sorts by name. Errors are reported through onError(title, message).
+     */
+    public ProductTableController(String taskPrefix, TableView<Product> productsTable, TextField searchField,
+                                  TableColumn<Product, ?> categoryColumn, TableColumn<Product, ?> quantityColumn,
+                                  Label totalProductsLabel, Label lowStockLabel, Label outOfStockLabel, Label stockValueLabel,
+                                  BiConsumer<String, String> onError) {
+        this.taskPrefix = taskPrefix;
+        this.productsTable = productsTable;
+        this.searchField = searchField;
+        this.categoryColumn = categoryColumn;
+        this.quantityColumn = quantityColumn;
+        this.totalProductsLabel = totalProductsLabel;
+        this.lowStockLabel = lowStockLabel;
+        this.outOfStockLabel = outOfStockLabel;
+        this.stockValueLabel = stockValueLabel;
+        this.onError = onError;
+        
+        productsTable.setItems(filteredProducts);
+        
+        // KPI cards follow the statistics model while every product is loaded
+        ChangeListener<Number> statisticsChanged = (observable, oldValue, newValue) -> {
+            if (nextPage == null) {
+                showLoadedStatistics();
+            }
+        };
+        statistics.totalProductsProperty().addListener(statisticsChanged);
+        statistics.lowStockProperty().addListener(statisticsChanged);
+        statistics.outOfStockProperty().addListener(statisticsChanged);
+        statistics.stockValueProperty().addListener(statisticsChanged);
+        setupCategoryTooltip();
+        
+        // Sorting and scrolling fetch from SQLite page by page
+        productsTable.setSortPolicy(table -> {
+            applySortOrder();
+            return true;
+        });
+        productsTable.skinProperty().addListener((observable, oldSkin, newSkin) -> attachScrollPaging());
+        
+        // Filter once typing pauses rather than on every keystroke
+        searchDebounce.setOnFinished(event -> filterProducts(searchField.getText()));
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
+            searchDebounce.playFromStart();
+        });
+    }
+    
+    /**
+     * Called with every summary loaded, for cards beyond the product ones.
+     */
+    public void setOnSummary(Consumer<DashboardSummary> onSummary) {
+        this.onSummary = onSummary;
+    }
+    
+    /**
+     * Reload the loaded rows, syncing with the server first.
+     */
+    public void loadProducts() {
+        loadFirstPage(true);
+    }
+    
+    /**
+     * Show a product that was just added.
+     */
+    public void add(Product product) {
+        searchIndex.put(product);
+        productsList.add(product);
+        filterProducts(searchField.getText());
+        updateStatistics();
+    }
+    
+    /**
+     * Show a product that was just deleted.
+     */
+    public void remove(Product product) {
+        searchIndex.remove(product.getId());
+        productsList.removeIf(row -> row.getId().equals(product.getId()));
+        updateStatistics();
+    }
+    
+    /**
+     * Update the given products' rows in place, keeping scroll position and
+     * selection. Rows keep their place even if the change moved their sort
+     * position; a full reload is left to Refresh.
+     */
+    public void patch(List<Product> updated) {
+        Map<String, Product> byId = new HashMap<>();
+        for (Product product : updated) {
+            byId.put(product.getId(), product);
+        }
+        boolean changed = false;
+        for (int i = 0; i < productsList.size() && !byId.isEmpty(); i++) {
+            Product row = productsList.get(i);
+            Product product = byId.remove(row.getId());
+            if (product != null && row.update(product.toRecord())) {
+                searchIndex.put(row);
+                changed = true;
+            }
+        }
+        if (changed) {
+            filterProducts(searchField.getText());
+        }
+        updateStatistics();
+    }
+    
+    // Reload the table from the top, re-reading as many rows as were loaded so
+    // the rows below the first page and the scroll position stay put;
+    // refresh syncs with the server first
+    private void loadFirstPage(boolean refresh) {
+        BackgroundTasks.cancel(taskPrefix + ".loadNextPage");
+        nextPage = null;
+        loadingPage = false;
+        ProductPage.Cursor cursor = ProductPage.Cursor.first(sort, descending);
+        int limit = Math.max(Config.PRODUCT_PAGE_SIZE, pagedRows);
+        String searchText = searchField.getText();
+        // Built with the rows and swapped in only if this load is the one shown
+        List<Product> loaded = new ArrayList<>();
+        ProductSearchIndex loadedIndex = new ProductSearchIndex();
+        
+        Task<ApiService.ApiResponse<ProductPage>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<ProductPage> call() {
+                ApiService.ApiResponse<ProductPage> response = ApiService.getProductsPage(cursor, limit, refresh);
+                if (!response.isSuccess()) {
+                    return response;
+                }
+                loaded.addAll(ApiService.toProducts(response.getData().getProducts()));
+                // Search hits from beyond the loaded rows, as searchUnloadedProducts merges them
+                if (response.getData().getNext() != null && searchText != null && !searchText.isBlank()) {
+                    ApiService.ApiResponse<List<Product>> hits = ApiService.searchProducts(searchText, Config.PRODUCT_PAGE_SIZE, 0);
+                    if (hits.isSuccess()) {
+                        Set<String> ids = new HashSet<>();
+                        for (Product product : loaded) {
+                            ids.add(product.getId());
+                        }
+                        for (Product product : hits.getData()) {
+                            if (ids.add(product.getId())) {
+                                loaded.add(product);
+                            }
+                        }
+                    }
+                }
+                // Build the search index here rather than on the FX thread
+                loadedIndex.rebuild(loaded);
+                return response;
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            ApiService.ApiResponse<ProductPage> response = task.getValue();
+            
+            if (response.isSuccess()) {
+                searchIndex.replaceWith(loadedIndex);
+                // Diff against the rows on screen rather than replacing them all
+                ProductListReconciler.Result changes = ProductListReconciler.reconcile(productsList, loaded);
+                nextPage = response.getData().getNext();
+                pagedRows = response.getData().getProducts().size();
+                productsLoaded = true;
+                if (searchField.getText().equals(searchText)) {
+                    // The search hits were merged in with the rows
+                    showMatches(searchIndex.search(searchText));
+                } else {
+                    filterProducts(searchField.getText());
+                }
+                updateStatistics();
+                logger.info("Products loaded: " + productsList.size() + (nextPage != null ? " (more available)" : "") + ", " + changes);
+                // The sync before a refresh replays the outbox; say once if it could not
+                String blocked = OutboxReplayer.getBlockedReason();
+                if (refresh && blocked != null && !outboxWarningShown) {
+                    outboxWarningShown = true;
+                    onError.accept("Offline changes not uploaded", blocked);
+                }
+            } else {
+                onError.accept("Failed to load products", response.getError());
+            }
+        });
+        
+        BackgroundTasks.runLatest(taskPrefix + ".loadProducts", task);
+    }
+    
+    // Append the page after the last loaded row, if there is one
+    private void loadNextPage() {
+        ProductPage.Cursor cursor = nextPage;
+        if (cursor == null || loadingPage) {
+            return;
+        }
+        loadingPage = true;
+        
+        Task<ApiService.ApiResponse<ProductPage>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<ProductPage> call() {
+                return ApiService.getProductsPage(cursor, Config.PRODUCT_PAGE_SIZE, false);
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            ApiService.ApiResponse<ProductPage> response = task.getValue();
+            // The table was reloaded or re-sorted while this page was in flight
+            if (cursor != nextPage) {
+                return;
+            }
+            loadingPage = false;
+            
+            if (response.isSuccess()) {
+                pagedRows += response.getData().getProducts().size();
+                List<Product> added = new ArrayList<>();
+                for (Product product : ApiService.toProducts(response.getData().getProducts())) {
+                    // Skip rows already pulled in by a search
+                    if (!searchIndex.contains(product.getId())) {
+                        searchIndex.put(product);
+                        added.add(product);
+                    }
+                }
+                productsList.addAll(added);
+                nextPage = response.getData().getNext();
+                filterProducts(searchField.getText());
+                updateStatistics();
+            } else {
+                onError.accept("Failed to load products", response.getError());
+            }
+        });
+        task.setOnFailed(event -> loadingPage = false);
+        
+        BackgroundTasks.runLatest(taskPrefix + ".loadNextPage", task);
+    }
+    
+    // Fetch the next page when the table is scrolled near the bottom
+    private void attachScrollPaging() {
+        for (Node node : productsTable.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL) {
+                bar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                    if (newValue.doubleValue() >= bar.getMax() * 0.9) {
+                        loadNextPage();
+                    }
+                });
+            }
+        }
+    }
+    
+    // Map the clicked column to an indexed sort key and reload in that order
+    private void applySortOrder() {
+        ProductSort requested = ProductSort.NAME;
+        boolean requestedDescending = false;
+        
+        if (!productsTable.getSortOrder().isEmpty()) {
+            TableColumn<Product, ?> column = productsTable.getSortOrder().get(0);
+            if (column == categoryColumn) {
+                requested = ProductSort.CATEGORY;
+            } else if (column == quantityColumn) {
+                requested = ProductSort.QUANTITY;
+            }
+            requestedDescending = column.getSortType() == TableColumn.SortType.DESCENDING;
+        }
+        
+        if (requested != sort || requestedDescending != descending) {
+            sort = requested;
+            descending = requestedDescending;
+            loadFirstPage(false);
+        }
+    }
+    
+    private void updateStatistics() {
+        Platform.runLater(() -> {
+            if (nextPage == null) {
+                showLoadedStatistics();
+                return;
+            }
+            
+            // Only some pages are loaded; aggregate the whole table in SQLite
+            loadSummary();
+        });
+    }
+    
+    /**
+     * Header cards from SQL aggregates; also how they render before the table has loaded.
+     */
+    public void loadSummary() {
+        Task<ApiService.ApiResponse<DashboardSummary>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<DashboardSummary> call() {
+                return ApiService.getDashboardSummary();
+            }
+        };
+        task.setOnSucceeded(event -> {
+            ApiService.ApiResponse<DashboardSummary> response = task.getValue();
+            if (!response.isSuccess()) {
+                return;
+            }
+            summary = response.getData();
+            onSummary.accept(summary);
+            // Once every product is loaded the statistics model is exact and newer
+            if (!productsLoaded || nextPage != null) {
+                ProductCounts counts = summary.getProducts();
+                totalProductsLabel.setText(String.valueOf(counts.getTotal()));
+                lowStockLabel.setText(String.valueOf(counts.getLowStock()));
+                outOfStockLabel.setText(String.valueOf(counts.getOutOfStock()));
+                stockValueLabel.setText(String.format("₱%.2f", counts.getStockValue()));
+            }
+        });
+        BackgroundTasks.runLatest(taskPrefix + ".loadSummary", task);
+    }
+    
+    // Every product is in the table, so the incrementally maintained model is exact
+    private void showLoadedStatistics() {
+        totalProductsLabel.setText(String.valueOf(statistics.totalProductsProperty().get()));
+        lowStockLabel.setText(String.valueOf(statistics.lowStockProperty().get()));
+        outOfStockLabel.setText(String.valueOf(statistics.outOfStockProperty().get()));
+        stockValueLabel.setText(String.format("₱%.2f", statistics.stockValueProperty().get()));
+    }
+    
+    // Per-category breakdown, built only when the tooltip opens: from the
+    // statistics model when everything is loaded, otherwise from the SQL summary
+    private void setupCategoryTooltip() {
+        Tooltip tooltip = new Tooltip();
+        tooltip.setOnShowing(event -> {
+            Map<String, CategoryTotals> categories = nextPage == null || summary == null
+                    ? new TreeMap<>(statistics.getCategoryTotals())
+                    : summary.getCategories();
+            StringBuilder text = new StringBuilder("By category:");
+            categories.forEach((category, totals) ->
+                    text.append(String.format("%n%s: %d products, %d units, ₱%.2f",
+                            category.isEmpty() ? "(none)" : category, totals.getProducts(), totals.getQuantity(), totals.getStockValue())));
+            tooltip.setText(text.toString());
+        });
+        totalProductsLabel.setTooltip(tooltip);
+    }
+    
+    private void filterProducts(String searchText) {
+        Set<String> matches = searchIndex.search(searchText);
+        if (matches == null) {
+            showMatches(null);
+        } else {
+            showMatches(matches);
+            if (nextPage != null) {
+                searchUnloadedProducts(searchText, matches);
+            }
+        }
+    }
+    
+    // Filter the table to the given ids (null shows everything). Setting a
+    // predicate re-tests and redraws every row, so skip it if nothing changed.
+    private void showMatches(Set<String> matches) {
+        if (Objects.equals(matches, shownMatches)) {
+            return;
+        }
+        shownMatches = matches;
+        filteredProducts.setPredicate(matches == null ? product -> true : product -> matches.contains(product.getId()));
+    }
+    
+    // Not every page is loaded: ask SQLite full-text search and merge its hits into the table
+    private void searchUnloadedProducts(String searchText, Set<String> loadedMatches) {
+        Task<ApiService.ApiResponse<List<Product>>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<List<Product>> call() {
+                return ApiService.searchProducts(searchText, Config.PRODUCT_PAGE_SIZE, 0);
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            ApiService.ApiResponse<List<Product>> response = task.getValue();
+            if (!response.isSuccess() || !searchText.equals(searchField.getText())) {
+                return;
+            }
+            
+            Set<String> matches = new HashSet<>(loadedMatches);
+            for (Product product : response.getData()) {
+                matches.add(product.getId());
+                if (!searchIndex.contains(product.getId())) {
+                    searchIndex.put(product);
+                    productsList.add(product);
+                }
+            }
+            showMatches(matches);
+        });
+        
+        BackgroundTasks.runLatest(taskPrefix + ".searchProducts", task);
+    }
+}
@@ -1,14 +1,21 @@
 package com.k4j.lpg.controllers;
 
 import com.k4j.lpg.Main;
+import com.k4j.lpg.models.CheckoutLine;
 import com.k4j.lpg.models.Product;
 import com.k4j.lpg.services.ApiService;
-
+import com.k4j.lpg.utils.BackgroundTasks;
 import com.k4j.lpg.utils.SessionManager;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.concurrent.Task;
@@ -17,10 +24,12 @@ import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -33,6 +42,8 @@ public class StaffDashboardController {
     @FXML private ImageView headerLogoImageView;
     @FXML private Label totalProductsLabel;
     @FXML private Label lowStockLabel;
+    @FXML private Label outOfStockLabel;
+    @FXML private Label stockValueLabel;
     
     @FXML private TextField searchField;
     @FXML private TableView<Product> productsTable;
@@ -42,8 +53,20 @@ public class StaffDashboardController {
     @FXML private TableColumn<Product, Double> priceColumn;
     @FXML private TableColumn<Product, Void> actionsColumn;
     
-    private final ObservableList<Product> productsList = FXCollections.observableArrayList();
-    private FilteredList<Product> filteredProducts;
+    @FXML private TableView<CartItem> cartTable;
+    @FXML private TableColumn<CartItem, String> cartNameColumn;
+    @FXML private TableColumn<CartItem, Integer> cartQuantityColumn;
+    @FXML private TableColumn<CartItem, Double> cartTotalColumn;
+    @FXML private Label cartTotalLabel;
+    @FXML private Button removeCartItemButton;
+    @FXML private Button clearCartButton;
+    @FXML private Button checkoutButton;
+    
+    private ProductTableController products;
+    
+    // Current sale, submitted as one checkout
+    private final ObservableList<CartItem> cartItems = FXCollections.observableArrayList();
+    private final BooleanProperty checkingOut = new SimpleBooleanProperty(false);
     
     @FXML
     public void initialize() {
@@ -55,17 +78,16 @@ public class StaffDashboardController {
         
         // Setup table columns
         setupProductsTable();
+        setupCartTable();
         
-        // Setup search
-        filteredProducts = new FilteredList<>(productsList, p -> true);
-        productsTable.setItems(filteredProducts);
+        // Paging, sorting, search and the header cards
+        priceColumn.setSortable(false);
+        products = new ProductTableController("staff", productsTable, searchField, categoryColumn, quantityColumn,
+                totalProductsLabel, lowStockLabel, outOfStockLabel, stockValueLabel, this::showError);
         
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            filterProducts(newValue);
-        });
-        
-        // Load data
-        loadProducts();
+        // Load data; the header cards come from one aggregate query before the table fills
+        products.loadSummary();
+        products.loadProducts();
     }
 
     private void loadHeaderLogo() {
@@ -141,17 +163,24 @@ public class StaffDashboardController {
             }
         });
         
-        // Actions column with Update Quantity button only (Staff can only update quantities)
+        // Actions column with Update Quantity and Add to Sale (Staff can only change quantities)
         actionsColumn.setCellFactory(param -> new TableCell<>() {
             private final Button updateBtn = new Button("Update Qty");
+            private final Button saleBtn = new Button("Add to Sale");
             
             {
                 updateBtn.getStyleClass().add("action-button");
+                saleBtn.getStyleClass().add("action-button");
                 
                 updateBtn.setOnAction(event -> {
                     Product product = getTableView().getItems().get(getIndex());
                     handleUpdateQuantity(product);
                 });
+                
+                saleBtn.setOnAction(event -> {
+                    Product product = getTableView().getItems().get(getIndex());
+                    handleAddToSale(product);
+                });
             }
             
             @Override
@@ -161,18 +190,39 @@ public class StaffDashboardController {
                 if (empty) {
                     setGraphic(null);
                 } else {
-                    setGraphic(updateBtn);
+                    HBox buttons = new HBox(5, updateBtn, saleBtn);
+                    setGraphic(buttons);
                 }
             }
         });
         
         // Row factory to highlight low stock using per-product threshold (set style directly)
         productsTable.setRowFactory(tv -> new TableRow<>() {
+            // Products are updated in place on refresh, so restyle when their stock changes
+            private final InvalidationListener restyle = observable -> applyStyle(getItem());
+            private Product observed;
+            
             @Override
             protected void updateItem(Product product, boolean empty) {
                 super.updateItem(product, empty);
-
-                if (empty || product == null) {
+                
+                Product next = empty ? null : product;
+                if (next != observed) {
+                    if (observed != null) {
+                        observed.quantityProperty().removeListener(restyle);
+                        observed.lowStockThresholdProperty().removeListener(restyle);
+                    }
+                    if (next != null) {
+                        next.quantityProperty().addListener(restyle);
+                        next.lowStockThresholdProperty().addListener(restyle);
+                    }
+                    observed = next;
+                }
+                applyStyle(next);
+            }
+            
+            private void applyStyle(Product product) {
+                if (product == null) {
                     setStyle("");
                 } else {
                     if (product.isLowStock()) {
@@ -185,52 +235,23 @@ public class StaffDashboardController {
         });
     }
     
-    private void loadProducts() {
-        Task<ApiService.ApiResponse<java.util.List<Product>>> task = new Task<>() {
+    private void setupCartTable() {
+        cartTable.setItems(cartItems);
+        cartNameColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getProduct().getName()));
+        cartQuantityColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getQuantity()));
+        cartTotalColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getAmount()));
+        cartTotalColumn.setCellFactory(column -> new TableCell<>() {
             @Override
-            protected ApiService.ApiResponse<java.util.List<Product>> call() {
-                return ApiService.getProducts();
-            }
-        };
-        
-        task.setOnSucceeded(event -> {
-            ApiService.ApiResponse<java.util.List<Product>> response = task.getValue();
-            
-            if (response.isSuccess()) {
-                productsList.clear();
-                productsList.addAll(response.getData());
-                updateStatistics();
-                logger.info("Products loaded: " + productsList.size());
-            } else {
-                showError("Failed to load products", response.getError());
+            protected void updateItem(Double amount, boolean empty) {
+                super.updateItem(amount, empty);
+                setText(empty || amount == null ? null : String.format("₱%.2f", amount));
             }
         });
         
-        new Thread(task).start();
-    }
-    
-    private void updateStatistics() {
-        Platform.runLater(() -> {
-            totalProductsLabel.setText(String.valueOf(productsList.size()));
-            
-            long lowStockCount = productsList.stream()
-                    .filter(Product::isLowStock)
-                    .count();
-            lowStockLabel.setText(String.valueOf(lowStockCount));
-        });
-    }
-    
-    private void filterProducts(String searchText) {
-        filteredProducts.setPredicate(product -> {
-            if (searchText == null || searchText.isEmpty()) {
-                return true;
-            }
-            
-            String lowerCaseFilter = searchText.toLowerCase();
-            
-            return product.getName().toLowerCase().contains(lowerCaseFilter) ||
-                   product.getCategory().toLowerCase().contains(lowerCaseFilter);
-        });
+        removeCartItemButton.disableProperty().bind(cartTable.getSelectionModel().selectedItemProperty().isNull().or(checkingOut));
+        clearCartButton.disableProperty().bind(Bindings.isEmpty(cartItems).or(checkingOut));
+        checkoutButton.disableProperty().bind(Bindings.isEmpty(cartItems).or(checkingOut));
+        cartItems.addListener((ListChangeListener<CartItem>) change -> updateCartTotal());
     }
     
     private void handleUpdateQuantity(Product product) {
@@ -265,17 +286,19 @@ public class StaffDashboardController {
         });
         
         Optional<Integer> result = dialog.showAndWait();
-        result.ifPresent(newQuantity -> updateProductQuantity(product.getId(), newQuantity));
+        // Send the change relative to what was shown, so a concurrent sale by someone else is kept
+        result.ifPresent(newQuantity -> updateProductQuantity(product.getId(), newQuantity - product.getQuantity()));
     }
     
-    private void updateProductQuantity(String productId, int newQuantity) {
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("quantity", newQuantity);
+    private void updateProductQuantity(String productId, int delta) {
+        if (delta == 0) {
+            return;
+        }
         
         Task<ApiService.ApiResponse<Product>> task = new Task<>() {
             @Override
             protected ApiService.ApiResponse<Product> call() {
-                return ApiService.updateProduct(productId, updates);
+                return ApiService.adjustQuantity(productId, delta, null);
             }
         };
         
@@ -283,19 +306,139 @@ public class StaffDashboardController {
             ApiService.ApiResponse<Product> response = task.getValue();
             
             if (response.isSuccess()) {
-                loadProducts(); // Reload to refresh table
+                products.patch(List.of(response.getData()));
                 showSuccess("Quantity updated successfully");
             } else {
                 showError("Failed to update quantity", response.getError());
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("staff.updateQuantity", task);
+    }
+    
+    private void handleAddToSale(Product product) {
+        // The cart being checked out must stay the cart shown
+        if (checkingOut.get()) {
+            return;
+        }
+        int inCart = 0;
+        int cartIndex = -1;
+        for (int i = 0; i < cartItems.size(); i++) {
+            if (cartItems.get(i).getProduct().getId().equals(product.getId())) {
+                inCart = cartItems.get(i).getQuantity();
+                cartIndex = i;
+            }
+        }
+        int available = product.getQuantity() - inCart;
+        if (available <= 0) {
+            showError("Out of stock", "No more " + product.getName() + " available to sell");
+            return;
+        }
+        
+        Dialog<Integer> dialog = new Dialog<>();
+        dialog.setTitle("Add to Sale");
+        dialog.setHeaderText("Add to sale: " + product.getName());
+        
+        ButtonType addButtonType = new ButtonType("Add", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(addButtonType, ButtonType.CANCEL);
+        
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+        
+        Spinner<Integer> quantitySpinner = new Spinner<>(1, available, 1);
+        quantitySpinner.setEditable(true);
+        
+        grid.add(new Label("Available:"), 0, 0);
+        grid.add(new Label(String.valueOf(available)), 1, 0);
+        grid.add(new Label("Quantity:"), 0, 1);
+        grid.add(quantitySpinner, 1, 1);
+        
+        dialog.getDialogPane().setContent(grid);
+        
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton == addButtonType) {
+                return quantitySpinner.getValue();
+            }
+            return null;
+        });
+        
+        Optional<Integer> result = dialog.showAndWait();
+        if (result.isPresent() && !checkingOut.get()) {
+            CartItem item = new CartItem(product, inCart + result.get());
+            if (cartIndex >= 0) {
+                cartItems.set(cartIndex, item);
+            } else {
+                cartItems.add(item);
+            }
+        }
+    }
+    
+    @FXML
+    private void handleRemoveCartItem() {
+        CartItem selected = cartTable.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            cartItems.remove(selected);
+        }
+    }
+    
+    @FXML
+    private void handleClearCart() {
+        cartItems.clear();
+    }
+    
+    // Submit the whole cart as one transaction, then refresh only the rows it touched
+    @FXML
+    private void handleCheckout() {
+        if (cartItems.isEmpty()) {
+            return;
+        }
+        
+        List<CheckoutLine> lines = new java.util.ArrayList<>();
+        double total = 0;
+        for (CartItem item : cartItems) {
+            lines.add(new CheckoutLine(item.getProduct().getId(), item.getQuantity()));
+            total += item.getAmount();
+        }
+        double saleTotal = total;
+        checkingOut.set(true);
+        
+        Task<ApiService.ApiResponse<List<Product>>> task = new Task<>() {
+            @Override
+            protected ApiService.ApiResponse<List<Product>> call() {
+                return ApiService.checkout(lines);
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            checkingOut.set(false);
+            ApiService.ApiResponse<List<Product>> response = task.getValue();
+            
+            if (response.isSuccess()) {
+                products.patch(response.getData());
+                cartItems.clear();
+                showSuccess(String.format("Sale recorded: ₱%.2f", saleTotal));
+            } else {
+                showError("Checkout failed", response.getError());
+            }
+        });
+        task.setOnFailed(event -> checkingOut.set(false));
+        
+        BackgroundTasks.run("staff.checkout", task);
+    }
+    
+    private void updateCartTotal() {
+        double total = 0;
+        for (CartItem item : cartItems) {
+            total += item.getAmount();
+        }
+        cartTotalLabel.setText(String.format("₱%.2f", total));
     }
     
     @FXML
     private void handleRefresh() {
-        loadProducts();
+        products.loadProducts();
     }
     
     @FXML
@@ -326,4 +469,27 @@ public class StaffDashboardController {
         alert.setContentText(message);
         alert.showAndWait();
     }
+    
+    // One line of the current sale, priced from the product as it was added
+    private static class CartItem {
+        private final Product product;
+        private final int quantity;
+        
+        CartItem(Product product, int quantity) {
+            this.product = product;
+            this.quantity = quantity;
+        }
+        
+        Product getProduct() {
+            return product;
+        }
+        
+        int getQuantity() {
+            return quantity;
+        }
+        
+        double getAmount() {
+            return product.getPrice() * quantity;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.k4j.lpg.controllers;
 import com.k4j.lpg.models.User;
 import com.k4j.lpg.services.ApiService;
 import com.k4j.lpg.services.LocalDbService;
+import com.k4j.lpg.utils.BackgroundTasks;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -117,7 +118,7 @@ public class UserManagementController {
             }
         });
         
-        new Thread(task).start();
+        BackgroundTasks.runLatest("users.loadUsers", task);
     }
     
     @FXML
@@ -191,7 +192,7 @@ public class UserManagementController {
             logger.error("Failed to add user", task.getException());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("users.addUser", task);
     }
     
     private void handleEditUser(User user) {
@@ -264,7 +265,7 @@ public class UserManagementController {
             logger.error("Failed to update user", task.getException());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("users.updateUser", task);
     }
     
     private void handleDeleteUser(User user) {
@@ -299,7 +300,7 @@ public class UserManagementController {
             logger.error("Failed to delete user", task.getException());
         });
         
-        new Thread(task).start();
+        BackgroundTasks.run("users.deleteUser", task);
     }
     
     private void showSuccess(String message) {
@@ -0,0 +1,31 @@
+package com.k4j.lpg.models;
+
+
+/**
+ * One line item of a sale: how many units of a product are being sold.
+ */
+public final class CheckoutLine {
+    private final String productId;
+    private final int quantity;
+    
+    public CheckoutLine(String productId, int quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    public int getQuantity() {
+        return quantity;
+    }
+    
+    @Override
+    public String toString() {
+        return "CheckoutLine{" +
+                "productId='" + productId + '\'' +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
@@ -2,14 +2,32 @@ package com.k4j.lpg.models;
 
 import javafx.beans.property.*;
 
+import java.util.Objects;
+import java.util.function.Consumer;
 
+
+/**
+ * JavaFX view model for one product row.
+ *
+ * Values live in a {@link ProductRecord} until something asks for a
+ * property (a table cell binding to it), at which point the property is
+ * created from the current value and becomes the source of truth for that
+ * field. Rows that are parsed, filtered or counted but never displayed stay
+ * a single small object. Code that aggregates over rows without displaying
+ * them can follow changes through {@link #setOnUpdated} instead of forcing
+ * the properties into existence.
+ */
 public class Product {
-    private final StringProperty id;
-    private final StringProperty name;
-    private final StringProperty category;
-    private final IntegerProperty quantity;
-    private final DoubleProperty price;
-    private final IntegerProperty lowStockThreshold;
+    private ProductRecord values;
+    
+    private StringProperty id;
+    private StringProperty name;
+    private StringProperty category;
+    private IntegerProperty quantity;
+    private DoubleProperty price;
+    private IntegerProperty lowStockThreshold;
+    
+    private Consumer<Product> onUpdated;
     
     public Product() {
         this("", "", "", 0, 0.0, 20);
@@ -20,105 +38,195 @@ public class Product {
     }
     
     public Product(String id, String name, String category, int quantity, double price, int lowStockThreshold) {
-        this.id = new SimpleStringProperty(id);
-        this.name = new SimpleStringProperty(name);
-        this.category = new SimpleStringProperty(category);
-        this.quantity = new SimpleIntegerProperty(quantity);
-        this.price = new SimpleDoubleProperty(price);
-        this.lowStockThreshold = new SimpleIntegerProperty(lowStockThreshold);
+        this(new ProductRecord(id, name, category, quantity, price, lowStockThreshold));
+    }
+    
+    public Product(ProductRecord values) {
+        this.values = values;
+    }
+    
+    public static Product from(ProductRecord values) {
+        return new Product(values);
+    }
+    
+    /**
+     * Current values as an immutable record.
+     */
+    public ProductRecord toRecord() {
+        if (id == null && name == null && category == null && quantity == null && price == null && lowStockThreshold == null) {
+            return values;
+        }
+        return new ProductRecord(getId(), getName(), getCategory(), getQuantity(), getPrice(), getLowStockThreshold());
+    }
+    
+    /**
+     * Take on newer values for the same product in place, so a table row
+     * showing it redraws only the cells whose value changed. Returns false
+     * if nothing changed.
+     */
+    public boolean update(ProductRecord next) {
+        boolean changed = !Objects.equals(getName(), next.getName())
+                || !Objects.equals(getCategory(), next.getCategory())
+                || getQuantity() != next.getQuantity()
+                || getPrice() != next.getPrice()
+                || getLowStockThreshold() != next.getLowStockThreshold();
+        if (!changed) {
+            return false;
+        }
+        
+        values = next;
+        // Properties already handed out hold their own copy; setting them fires only on a real change
+        if (name != null) {
+            name.set(next.getName());
+        }
+        if (category != null) {
+            category.set(next.getCategory());
+        }
+        if (quantity != null) {
+            quantity.set(next.getQuantity());
+        }
+        if (price != null) {
+            price.set(next.getPrice());
+        }
+        if (lowStockThreshold != null) {
+            lowStockThreshold.set(next.getLowStockThreshold());
+        }
+        fireUpdated();
+        return true;
+    }
+    
+    /**
+     * Called after {@link #update} or a setter changed this product's values.
+     * Changes made directly on a property object are not reported.
+     */
+    public void setOnUpdated(Consumer<Product> onUpdated) {
+        this.onUpdated = onUpdated;
+    }
+    
+    public Consumer<Product> getOnUpdated() {
+        return onUpdated;
+    }
+    
+    private void fireUpdated() {
+        if (onUpdated != null) {
+            onUpdated.accept(this);
+        }
     }
     
     // ID Property
     public String getId() {
-        return id.get();
+        return id != null ? id.get() : values.getId();
     }
     
     public void setId(String id) {
-        this.id.set(id);
+        idProperty().set(id);
     }
     
     public StringProperty idProperty() {
+        if (id == null) {
+            id = new SimpleStringProperty(values.getId());
+        }
         return id;
     }
     
     // Name Property
     public String getName() {
-        return name.get();
+        return name != null ? name.get() : values.getName();
     }
     
     public void setName(String name) {
-        this.name.set(name);
+        nameProperty().set(name);
+        fireUpdated();
     }
     
     public StringProperty nameProperty() {
+        if (name == null) {
+            name = new SimpleStringProperty(values.getName());
+        }
         return name;
     }
     
     // Category Property
     public String getCategory() {
-        return category.get();
+        return category != null ? category.get() : values.getCategory();
     }
     
     public void setCategory(String category) {
-        this.category.set(category);
+        categoryProperty().set(category);
+        fireUpdated();
     }
     
     public StringProperty categoryProperty() {
+        if (category == null) {
+            category = new SimpleStringProperty(values.getCategory());
+        }
         return category;
     }
     
     // Quantity Property
     public int getQuantity() {
-        return quantity.get();
+        return quantity != null ? quantity.get() : values.getQuantity();
     }
     
     public void setQuantity(int quantity) {
-        this.quantity.set(quantity);
+        quantityProperty().set(quantity);
+        fireUpdated();
     }
     
     public IntegerProperty quantityProperty() {
+        if (quantity == null) {
+            quantity = new SimpleIntegerProperty(values.getQuantity());
+        }
         return quantity;
     }
     
     // Price Property
     public double getPrice() {
-        return price.get();
+        return price != null ? price.get() : values.getPrice();
     }
     
     public void setPrice(double price) {
-        this.price.set(price);
+        priceProperty().set(price);
+        fireUpdated();
     }
     
     public DoubleProperty priceProperty() {
+        if (price == null) {
+            price = new SimpleDoubleProperty(values.getPrice());
+        }
         return price;
     }
     
     // Low Stock Threshold Property
     public int getLowStockThreshold() {
-        return lowStockThreshold.get();
+        return lowStockThreshold != null ? lowStockThreshold.get() : values.getLowStockThreshold();
     }
     
     public void setLowStockThreshold(int threshold) {
-        this.lowStockThreshold.set(threshold);
+        lowStockThresholdProperty().set(threshold);
+        fireUpdated();
     }
     
     public IntegerProperty lowStockThresholdProperty() {
+        if (lowStockThreshold == null) {
+            lowStockThreshold = new SimpleIntegerProperty(values.getLowStockThreshold());
+        }
         return lowStockThreshold;
     }
     
     // Helper method to check if product is low stock
     public boolean isLowStock() {
-        return quantity.get() <= lowStockThreshold.get();
+        return getQuantity() <= getLowStockThreshold();
     }
     
     @Override
     public String toString() {
         return "Product{" +
-                "id='" + id.get() + '\'' +
-                ", name='" + name.get() + '\'' +
-                ", category='" + category.get() + '\'' +
-                ", quantity=" + quantity.get() +
-                ", price=" + price.get() +
+                "id='" + getId() + '\'' +
+                ", name='" + getName() + '\'' +
+                ", category='" + getCategory() + '\'' +
+                ", quantity=" + getQuantity() +
+                ", price=" + getPrice() +
                 '}';
     }
 }
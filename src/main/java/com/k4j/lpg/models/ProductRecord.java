@@ -0,0 +1,67 @@
+package com.k4j.lpg.models;
+
+
+/**
+ * Immutable product row used by the services and the local database.
+ *
+ * Product wraps each field in a JavaFX property, which is only worth paying
+ * for on rows the UI actually binds to. Everything else (JSON parsing, the
+ * local database, bulk writes, paging) passes these plain values
+ * around and converts with {@link Product#from(ProductRecord)} at the UI edge.
+ */
+public final class ProductRecord {
+    private final String id;
+    private final String name;
+    private final String category;
+    private final int quantity;
+    private final double price;
+    private final int lowStockThreshold;
+    
+    public ProductRecord(String id, String name, String category, int quantity, double price, int lowStockThreshold) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.price = price;
+        this.lowStockThreshold = lowStockThreshold;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public int getQuantity() {
+        return quantity;
+    }
+    
+    public double getPrice() {
+        return price;
+    }
+    
+    public int getLowStockThreshold() {
+        return lowStockThreshold;
+    }
+    
+    public boolean isLowStock() {
+        return quantity <= lowStockThreshold;
+    }
+    
+    @Override
+    public String toString() {
+        return "ProductRecord{" +
+                "id='" + id + '\'' +
+                ", name='" + name + '\'' +
+                ", category='" + category + '\'' +
+                ", quantity=" + quantity +
+                ", price=" + price +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package com.k4j.lpg.models;
+
+
+/**
+ * One entry of the append-only stock ledger: a quantity change of a product,
+ * why it happened and who made it.
+ */
+public final class StockMovement {
+    // Reasons recorded by the app; anything else came from a caller-supplied reason
+    public static final String REASON_OPENING = "opening";
+    public static final String REASON_INITIAL = "initial";
+    public static final String REASON_ADJUSTMENT = "adjustment";
+    public static final String REASON_SALE = "sale";
+    public static final String REASON_DELETE = "delete";
+    public static final String REASON_SYNC = "sync";
+    
+    private final long id;
+    private final String productId;
+    private final int delta;
+    private final String reason;
+    private final String userId;
+    private final long createdAt;
+    
+    public StockMovement(long id, String productId, int delta, String reason, String userId, long createdAt) {
+        this.id = id;
+        this.productId = productId;
+        this.delta = delta;
+        this.reason = reason;
+        this.userId = userId;
+        this.createdAt = createdAt;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    public int getDelta() {
+        return delta;
+    }
+    
+    public String getReason() {
+        return reason;
+    }
+    
+    /**
+     * User who made the change, or null for changes pulled from the server.
+     */
+    public String getUserId() {
+        return userId;
+    }
+    
+    /**
+     * Epoch seconds.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    @Override
+    public String toString() {
+        return "StockMovement{" +
+                "id=" + id +
+                ", productId='" + productId + '\'' +
+                ", delta=" + delta +
+                ", reason='" + reason + '\'' +
+                ", userId='" + userId + '\'' +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
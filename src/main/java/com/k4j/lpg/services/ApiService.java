@@ -3,10 +3,14 @@ package com.k4j.lpg.services;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import com.k4j.lpg.models.CheckoutLine;
 import com.k4j.lpg.models.Product;
+import com.k4j.lpg.models.ProductRecord;
+import com.k4j.lpg.models.StockMovement;
 import com.k4j.lpg.models.User;
 import com.k4j.lpg.utils.Config;
 import com.k4j.lpg.utils.SessionManager;
+import com.k4j.lpg.utils.SharedHttpClient;
 
 import com.k4j.lpg.services.LocalDbService;
 import com.k4j.lpg.utils.NetworkChecker;
@@ -14,24 +18,41 @@ import com.k4j.lpg.utils.NetworkChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * API facade used by the controllers.
+ *
+ * Every call has a CompletableFuture-returning *Async variant. HTTP calls go
+ * through HttpClient.sendAsync, so no thread is parked while a request is in
+ * flight; response parsing and local database work run on a small dedicated
+ * executor. The blocking methods join their async counterpart. Timeouts,
+ * retries and the circuit breaker are applied by {@link HttpPolicy}.
+ */
 public class ApiService {
     
     private static final Logger logger = LoggerFactory.getLogger(ApiService.class);
     private static final Gson gson = new Gson();
-    private static final HttpClient httpClient = HttpClient.newHttpClient();
+    private static final ExecutorService apiExecutor = Executors.newFixedThreadPool(
+        Config.API_EXECUTOR_THREADS, new ApiThreadFactory());
+    private static final HttpClient httpClient = SharedHttpClient.get();
     
     // ============================================
     // AUTH API
@@ -41,104 +62,105 @@ public class ApiService {
      * Sign in user
      */
     public static ApiResponse<User> signIn(String username, String password) {
-        try {
-            // Try local authentication first
-            User user = LocalDbService.authenticateUser(username, password);
-            
+        return signInAsync(username, password).join();
+    }
+    
+    public static CompletableFuture<ApiResponse<User>> signInAsync(String username, String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                // Try local authentication first
+                return LocalDbService.authenticateUser(username, password);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, apiExecutor).thenCompose(user -> {
             if (user != null) {
                 // Generate a simple local token
-                String localToken = "local_" + java.util.UUID.randomUUID().toString();
+                String localToken = SessionManager.LOCAL_TOKEN_PREFIX + java.util.UUID.randomUUID().toString();
                 
                 // Save session
                 SessionManager.getInstance().saveSession(localToken, user);
                 
                 logger.info("Local sign in successful for user: " + username);
-                return new ApiResponse<>(true, user, null);
+                return CompletableFuture.completedFuture(new ApiResponse<>(true, user, null));
             }
             
             // If offline and no local match
             if (!NetworkChecker.isOnline()) {
-                return new ApiResponse<>(false, null, "Invalid username or password (Offline mode)");
+                return CompletableFuture.completedFuture(
+                    new ApiResponse<User>(false, null, "Invalid username or password (Offline mode)"));
             }
             
             // Try online authentication if available
-            try {
-                Map<String, String> body = new HashMap<>();
-                body.put("username", username);
-                body.put("password", password);
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(Config.API_BASE_URL + "/auth/signin"))
-                        .header("Content-Type", "application/json")
-                        .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
-                        .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
-                        .build();
-                
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            return signInOnlineAsync(username, password);
+        }).exceptionally(e -> failure("Sign in error", "Sign in failed", e));
+    }
+    
+    private static CompletableFuture<ApiResponse<User>> signInOnlineAsync(String username, String password) {
+        Map<String, String> body = new HashMap<>();
+        body.put("username", username);
+        body.put("password", password);
+        
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/auth/signin"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.SIGN_IN).thenApplyAsync(response -> {
+            if (response.statusCode() == 200) {
+                JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
                 
-                if (response.statusCode() == 200) {
-                    JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
+                if (jsonResponse.get("success").getAsBoolean()) {
+                    String accessToken = jsonResponse.get("accessToken").getAsString();
+                    User onlineUser = parseUser(jsonResponse.getAsJsonObject("user"));
                     
-                    if (jsonResponse.get("success").getAsBoolean()) {
-                        String accessToken = jsonResponse.get("accessToken").getAsString();
-                        JsonObject userJson = jsonResponse.getAsJsonObject("user");
-                        
-                        User onlineUser = new User(
-                            userJson.get("id").getAsString(),
-                            userJson.get("username").getAsString(),
-                            userJson.get("role").getAsString()
-                        );
-                        
+                    try {
                         // Cache the user locally
                         LocalDbService.addUser(username, password, onlineUser.getRole());
-                        
-                        // Save session
-                        SessionManager.getInstance().saveSession(accessToken, onlineUser);
-                        
-                        logger.info("Online sign in successful for user: " + username);
-                        return new ApiResponse<>(true, onlineUser, null);
+                    } catch (Exception e) {
+                        logger.warn("Failed to cache online user locally", e);
                     }
+                    
+                    // Save session
+                    SessionManager.getInstance().saveSession(accessToken, onlineUser);
+                    
+                    logger.info("Online sign in successful for user: " + username);
+                    return new ApiResponse<>(true, onlineUser, null);
                 }
-            } catch (Exception e) {
-                logger.warn("Online authentication failed, already tried local auth", e);
             }
-            
+            return new ApiResponse<User>(false, null, "Invalid username or password");
+        }, apiExecutor).exceptionally(e -> {
+            logger.warn("Online authentication failed, already tried local auth", unwrap(e));
             return new ApiResponse<>(false, null, "Invalid username or password");
-            
-        } catch (Exception e) {
-            logger.error("Sign in error", e);
-            return new ApiResponse<>(false, null, "Sign in failed: " + e.getMessage());
-        }
+        });
     }
     
     /**
      * Sign up new user
      */
     public static ApiResponse<User> signUp(String username, String password, String role) {
-        try {
-            Map<String, String> body = new HashMap<>();
-            body.put("username", username);
-            body.put("password", password);
-            body.put("role", role);
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/auth/signup"))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
-                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
+        return signUpAsync(username, password, role).join();
+    }
+    
+    public static CompletableFuture<ApiResponse<User>> signUpAsync(String username, String password, String role) {
+        Map<String, String> body = new HashMap<>();
+        body.put("username", username);
+        body.put("password", password);
+        body.put("role", role);
+        
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/auth/signup"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.SIGN_UP).thenApplyAsync(response -> {
             if (response.statusCode() == 200 || response.statusCode() == 201) {
                 JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
-                JsonObject userJson = jsonResponse.getAsJsonObject("user");
-                
-                User user = new User(
-                    userJson.get("id").getAsString(),
-                    userJson.get("username").getAsString(),
-                    userJson.get("role").getAsString()
-                );
+                User user = parseUser(jsonResponse.getAsJsonObject("user"));
                 
                 logger.info("Sign up successful for user: " + username);
                 return new ApiResponse<>(true, user, null);
@@ -147,54 +169,44 @@ public class ApiService {
             JsonObject errorResponse = gson.fromJson(response.body(), JsonObject.class);
             String errorMsg = errorResponse.has("error") ? errorResponse.get("error").getAsString() : "Signup failed";
             
-            return new ApiResponse<>(false, null, errorMsg);
-            
-        } catch (Exception e) {
-            logger.error("Sign up error", e);
-            return new ApiResponse<>(false, null, "Sign up failed: " + e.getMessage());
-        }
+            return new ApiResponse<User>(false, null, errorMsg);
+        }, apiExecutor).exceptionally(e -> failure("Sign up error", "Sign up failed", e));
     }
     
     /**
      * Check session validity
      */
     public static ApiResponse<User> checkSession() {
-        try {
-            String token = SessionManager.getInstance().getAccessToken();
-            if (token == null) {
-                return new ApiResponse<>(false, null, "No session token");
-            }
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/auth/session"))
-                    .header("Authorization", "Bearer " + token)
-                    .GET()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
+        return checkSessionAsync().join();
+    }
+    
+    public static CompletableFuture<ApiResponse<User>> checkSessionAsync() {
+        String token = SessionManager.getInstance().getAccessToken();
+        if (token == null) {
+            return CompletableFuture.completedFuture(new ApiResponse<>(false, null, "No session token"));
+        }
+        
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/auth/session"))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.SESSION).thenApplyAsync(response -> {
             if (response.statusCode() == 200) {
                 JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
-                JsonObject userJson = jsonResponse.getAsJsonObject("user");
-                
-                User user = new User(
-                    userJson.get("id").getAsString(),
-                    userJson.get("username").getAsString(),
-                    userJson.get("role").getAsString()
-                );
+                User user = parseUser(jsonResponse.getAsJsonObject("user"));
                 
                 return new ApiResponse<>(true, user, null);
             }
             
             // Session invalid, clear it
             SessionManager.getInstance().clearSession();
-            return new ApiResponse<>(false, null, "Session expired");
-            
-        } catch (Exception e) {
-            logger.error("Session check error", e);
+            return new ApiResponse<User>(false, null, "Session expired");
+        }, apiExecutor).exceptionally(e -> {
             SessionManager.getInstance().clearSession();
-            return new ApiResponse<>(false, null, "Session check failed: " + e.getMessage());
-        }
+            return failure("Session check error", "Session check failed", e);
+        });
     }
     
     /**
@@ -210,97 +222,123 @@ public class ApiService {
     // ============================================
     
     /**
-     * Get all products
+     * Get one page of products in the cursor's sort order. With refresh set,
+     * the local cache is synced first (only worth doing for the first page).
      */
+    public static ApiResponse<ProductPage> getProductsPage(ProductPage.Cursor cursor, int limit, boolean refresh) {
+        return getProductsPageAsync(cursor, limit, refresh).join();
+    }
     
-    public static ApiResponse<List<Product>> getProducts() {
-    try {
-        // Check if online
-        if (NetworkChecker.isOnline()) {
-            // Fetch from Supabase
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/products"))
-                    .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
-                    .GET()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
-                
-                List<Product> products = new ArrayList<>();
-                jsonResponse.getAsJsonArray("products").forEach(element -> {
-                    JsonObject productJson = element.getAsJsonObject();
-                    Product product = new Product(
-                        productJson.get("id").getAsString(),
-                        productJson.get("name").getAsString(),
-                        productJson.get("category").getAsString(),
-                        productJson.get("quantity").getAsInt(),
-                        productJson.get("price").getAsDouble(),
-                        productJson.has("low_stock_threshold") ? productJson.get("low_stock_threshold").getAsInt() : Config.LOW_STOCK_THRESHOLD
-                    );
-                    products.add(product);
-                });
-                
-                // Cache the products
-                try {
-                    LocalDbService.cacheProducts(products);
-                    logger.info("Products cached locally");
-                } catch (SQLException e) {
-                    logger.error("Failed to cache products", e);
-                }
-                
-                return new ApiResponse<>(true, products, null);
+    public static CompletableFuture<ApiResponse<ProductPage>> getProductsPageAsync(ProductPage.Cursor cursor, int limit, boolean refresh) {
+        CompletableFuture<Boolean> synced = refresh ? syncProductsAsync() : CompletableFuture.completedFuture(true);
+        
+        return synced.thenApplyAsync(fresh -> {
+            try {
+                ProductPage page = LocalDbService.getProductsPage(cursor, limit);
+                return new ApiResponse<>(true, page, fresh ? null : "Using cached data (offline)");
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
+        }, apiExecutor).exceptionally(e -> failure("Failed to load product page", "Failed to load products", e));
+    }
+    
+    /**
+     * Header card figures (product counts, stock value, users, per-category
+     * totals) from the local database, without loading any rows.
+     */
+    public static ApiResponse<DashboardSummary> getDashboardSummary() {
+        try {
+            return new ApiResponse<>(true, LocalDbService.getDashboardSummary(), null);
+        
+        } catch (Exception e) {
+            logger.error("Dashboard summary error", e);
+            return new ApiResponse<>(false, null, "Failed to load dashboard summary: " + e.getMessage());
         }
+    }
+    
+    /**
+     * End-of-day stock valuation from the local database (see ValuationReport)
+     */
+    public static ApiResponse<ValuationReport> getValuationReport() {
+        try {
+            return new ApiResponse<>(true, LocalDbService.buildValuationReport(), null);
         
-        // If offline or failed, use cache
-        logger.warn("Using cached products (offline mode)");
-        List<Product> cachedProducts = LocalDbService.getCachedProducts();
-        return new ApiResponse<>(true, cachedProducts, "Using cached data (offline)");
+        } catch (Exception e) {
+            logger.error("Valuation report error", e);
+            return new ApiResponse<>(false, null, "Failed to build valuation report: " + e.getMessage());
+        }
+    }
+    
+    public static CompletableFuture<ApiResponse<ValuationReport>> getValuationReportAsync() {
+        return CompletableFuture.supplyAsync(ApiService::getValuationReport, apiExecutor);
+    }
+    
+    // Completes with true if the local cache is now in sync with the server
+    private static CompletableFuture<Boolean> syncProductsAsync() {
+        CompletableFuture<Boolean> synced;
         
-    } catch (Exception e) {
-        // Fallback to cache
-        try {
-            logger.error("Failed to fetch products, using cache", e);
-            List<Product> cachedProducts = LocalDbService.getCachedProducts();
-            return new ApiResponse<>(true, cachedProducts, "Using cached data (error: " + e.getMessage() + ")");
-        } catch (SQLException cacheError) {
-            logger.error("Failed to load cached products", cacheError);
-            return new ApiResponse<>(false, null, "Failed to load products: " + e.getMessage());
+        // Check if online
+        if (NetworkChecker.isOnline()) {
+            // Push offline edits first, then pull only what changed on the server since the last sync
+            synced = OutboxReplayer.replayAsync()
+                    .exceptionally(e -> {
+                        logger.warn("Outbox replay failed, local edits stay queued", unwrap(e));
+                        return null;
+                    })
+                    .thenCompose(replayed -> ProductSyncService.syncAsync(apiExecutor))
+                    .thenApply(result -> true)
+                    .exceptionally(e -> {
+                        if (unwrap(e) instanceof HttpPolicy.CircuitOpenException) {
+                            logger.warn("Product sync skipped: " + unwrap(e).getMessage());
+                            return false;
+                        }
+                        logger.error("Product sync failed", unwrap(e));
+                        if (unwrap(e) instanceof IOException) {
+                            // Likely lost connectivity; don't wait for the next scheduled probe
+                            NetworkChecker.refresh();
+                        }
+                        return false;
+                    });
+        } else {
+            synced = CompletableFuture.completedFuture(false);
         }
+        return synced;
     }
-}
     
     /**
      * Add new product (Admin only)
      */
     public static ApiResponse<Product> addProduct(Product product) {
         try {
-            Product newProduct = LocalDbService.addProduct(
+            ProductRecord newProduct = ProductRepository.add(
                 product.getName(),
                 product.getCategory(),
                 product.getQuantity(),
-                product.getPrice()
+                product.getPrice(),
+                SessionManager.getInstance().getCurrentUserId()
             );
             
             logger.info("Product added: " + newProduct.getName());
-            return new ApiResponse<>(true, newProduct, null);
-            
+            OutboxReplayer.requestReplay();
+            return new ApiResponse<>(true, Product.from(newProduct), null);
+        
         } catch (Exception e) {
             logger.error("Add product error", e);
             return new ApiResponse<>(false, null, "Failed to add product: " + e.getMessage());
         }
     }
     
+    public static CompletableFuture<ApiResponse<Product>> addProductAsync(Product product) {
+        return CompletableFuture.supplyAsync(() -> addProduct(product), apiExecutor);
+    }
+    
     /**
      * Update product (Admin only for full updates, Staff for quantity only)
      */
     public static ApiResponse<Product> updateProduct(String productId, Map<String, Object> updates) {
         try {
             // Fetch current product to preserve fields not being updated
-            Product currentProduct = LocalDbService.getProductById(productId);
+            ProductRecord currentProduct = ProductRepository.getById(productId);
             if (currentProduct == null) {
                 return new ApiResponse<>(false, null, "Product not found");
             }
@@ -311,35 +349,165 @@ public class ApiService {
             Integer quantity = updates.containsKey("quantity") ? (Integer) updates.get("quantity") : currentProduct.getQuantity();
             Double price = updates.containsKey("price") ? (Double) updates.get("price") : currentProduct.getPrice();
             Integer lowStockThreshold = updates.containsKey("lowStockThreshold") ? (Integer) updates.get("lowStockThreshold") : currentProduct.getLowStockThreshold();
-            
-            LocalDbService.updateProduct(productId, name, category, quantity, price, lowStockThreshold);
-            
-            Product updatedProduct = LocalDbService.getProductById(productId);
-            logger.info("Product updated: " + (updatedProduct != null ? updatedProduct.getName() : productId));
-            return new ApiResponse<>(true, updatedProduct, null);
-            
+            // Why the quantity changed, for the stock ledger
+            String reason = updates.containsKey("reason") ? (String) updates.get("reason") : StockMovement.REASON_ADJUSTMENT;
+            
+            // Passing the row just read saves the write from reading it again
+            ProductRecord updatedProduct = ProductRepository.update(currentProduct, name, category, quantity, price, lowStockThreshold,
+                reason, SessionManager.getInstance().getCurrentUserId());
+            if (updatedProduct == null) {
+                // Deleted between the lookup above and the write
+                return new ApiResponse<>(false, null, "Product not found");
+            }
+            logger.info("Product updated: " + updatedProduct.getName());
+            OutboxReplayer.requestReplay();
+            // The stored values, so callers can patch their copy instead of reloading
+            return new ApiResponse<>(true, Product.from(updatedProduct), null);
+        
         } catch (Exception e) {
             logger.error("Update product error", e);
             return new ApiResponse<>(false, null, "Failed to update product: " + e.getMessage());
         }
     }
     
+    public static CompletableFuture<ApiResponse<Product>> updateProductAsync(String productId, Map<String, Object> updates) {
+        return CompletableFuture.supplyAsync(() -> updateProduct(productId, updates), apiExecutor);
+    }
+    
+    /**
+     * Change a product's quantity by a relative amount (e.g. -1 for a sale).
+     * Unlike updateProduct with an absolute quantity, concurrent adjustments
+     * from several users all take effect, locally and on the server.
+     */
+    public static ApiResponse<Product> adjustQuantity(String productId, int delta, String reason) {
+        try {
+            ProductRecord product = ProductRepository.adjustQuantity(productId, delta,
+                reason != null ? reason : StockMovement.REASON_ADJUSTMENT,
+                SessionManager.getInstance().getCurrentUserId());
+            if (product == null) {
+                boolean exists = ProductRepository.getById(productId) != null;
+                return new ApiResponse<>(false, null, exists ? "Not enough stock" : "Product not found");
+            }
+            
+            logger.info("Product quantity adjusted by " + delta + ": " + product.getName() + " now " + product.getQuantity());
+            OutboxReplayer.requestReplay();
+            return new ApiResponse<>(true, Product.from(product), null);
+        
+        } catch (Exception e) {
+            logger.error("Adjust quantity error", e);
+            return new ApiResponse<>(false, null, "Failed to adjust quantity: " + e.getMessage());
+        }
+    }
+    
+    public static CompletableFuture<ApiResponse<Product>> adjustQuantityAsync(String productId, int delta, String reason) {
+        return CompletableFuture.supplyAsync(() -> adjustQuantity(productId, delta, reason), apiExecutor);
+    }
+    
+    /**
+     * Sell several products at once (a point-of-sale transaction). Stock for
+     * every line is checked and taken in one local transaction, so either the
+     * whole sale is recorded or nothing is. Returns the updated products so
+     * the caller can refresh just those rows.
+     */
+    public static ApiResponse<List<Product>> checkout(List<CheckoutLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return new ApiResponse<>(false, null, "Nothing to check out");
+        }
+        
+        try {
+            List<ProductRecord> products = ProductRepository.checkout(lines, SessionManager.getInstance().getCurrentUserId());
+            
+            logger.info("Checkout completed: " + lines.size() + " line(s), " + products.size() + " product(s)");
+            OutboxReplayer.requestReplay();
+            return new ApiResponse<>(true, toProducts(products), null);
+        
+        } catch (LocalDbService.InsufficientStockException e) {
+            ProductRecord product = null;
+            try {
+                product = ProductRepository.getById(e.getProductId());
+            } catch (Exception ignored) {
+                // Fall back to the generic message below
+            }
+            String error = product == null
+                ? "A product in the sale no longer exists"
+                : "Not enough stock for " + product.getName() + ": " + product.getQuantity() + " left, " + e.getRequested() + " requested";
+            return new ApiResponse<>(false, null, error);
+        
+        } catch (Exception e) {
+            logger.error("Checkout error", e);
+            return new ApiResponse<>(false, null, "Checkout failed: " + e.getMessage());
+        }
+    }
+    
+    public static CompletableFuture<ApiResponse<List<Product>>> checkoutAsync(List<CheckoutLine> lines) {
+        return CompletableFuture.supplyAsync(() -> checkout(lines), apiExecutor);
+    }
+    
     /**
      * Delete product (Admin only)
      */
     public static ApiResponse<Void> deleteProduct(String productId) {
         try {
-            LocalDbService.deleteProduct(productId);
+            ProductRepository.delete(productId, SessionManager.getInstance().getCurrentUserId());
             
             logger.info("Product deleted: " + productId);
+            OutboxReplayer.requestReplay();
             return new ApiResponse<>(true, null, null);
-            
+        
         } catch (Exception e) {
             logger.error("Delete product error", e);
             return new ApiResponse<>(false, null, "Failed to delete product: " + e.getMessage());
         }
     }
     
+    public static CompletableFuture<ApiResponse<Void>> deleteProductAsync(String productId) {
+        return CompletableFuture.supplyAsync(() -> deleteProduct(productId), apiExecutor);
+    }
+    
+    /**
+     * Search products by name/category, best matches first
+     */
+    public static ApiResponse<List<Product>> searchProducts(String query, int limit, int offset) {
+        try {
+            return new ApiResponse<>(true, toProducts(LocalDbService.searchProducts(query, limit, offset)), null);
+        
+        } catch (Exception e) {
+            logger.error("Search products error", e);
+            return new ApiResponse<>(false, null, "Failed to search products: " + e.getMessage());
+        }
+    }
+    
+    public static CompletableFuture<ApiResponse<List<Product>>> searchProductsAsync(String query, int limit, int offset) {
+        return CompletableFuture.supplyAsync(() -> searchProducts(query, limit, offset), apiExecutor);
+    }
+    
+    /**
+     * Stock ledger entries in [from, to) (epoch seconds), newest first.
+     * A null productId returns movements of every product.
+     */
+    public static ApiResponse<List<StockMovement>> getStockMovements(String productId, long from, long to, int limit) {
+        try {
+            return new ApiResponse<>(true, LocalDbService.getStockMovements(productId, from, to, limit), null);
+        
+        } catch (Exception e) {
+            logger.error("Get stock movements error", e);
+            return new ApiResponse<>(false, null, "Failed to load stock history: " + e.getMessage());
+        }
+    }
+    
+    public static CompletableFuture<ApiResponse<List<StockMovement>>> getStockMovementsAsync(String productId, long from, long to, int limit) {
+        return CompletableFuture.supplyAsync(() -> getStockMovements(productId, from, to, limit), apiExecutor);
+    }
+    
+    // Wrap data-layer records in view models for the controllers
+    public static List<Product> toProducts(List<ProductRecord> records) {
+        List<Product> products = new ArrayList<>(records.size());
+        for (ProductRecord record : records) {
+            products.add(Product.from(record));
+        }
+        return products;
+    }
+    
     // ============================================
     // USERS API (Admin only)
     // ============================================
@@ -353,103 +521,146 @@ public class ApiService {
             
             logger.info("Loaded " + users.size() + " users");
             return new ApiResponse<>(true, users, null);
-            
+        
         } catch (Exception e) {
             logger.error("Get users error", e);
             return new ApiResponse<>(false, null, "Failed to load users: " + e.getMessage());
         }
     }
     
+    public static CompletableFuture<ApiResponse<List<User>>> getUsersAsync() {
+        return CompletableFuture.supplyAsync(ApiService::getUsers, apiExecutor);
+    }
+    
     /**
      * Update user (Admin only)
      */
     public static ApiResponse<User> updateUser(String userId, Map<String, Object> updates) {
-        try {
-            String token = SessionManager.getInstance().getAccessToken();
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/users/" + userId))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + token)
-                    .PUT(HttpRequest.BodyPublishers.ofString(gson.toJson(updates)))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
+        return updateUserAsync(userId, updates).join();
+    }
+    
+    public static CompletableFuture<ApiResponse<User>> updateUserAsync(String userId, Map<String, Object> updates) {
+        String token = SessionManager.getInstance().getAccessToken();
+        
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/users/" + userId))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .PUT(HttpRequest.BodyPublishers.ofString(gson.toJson(updates)))
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.USERS).thenApplyAsync(response -> {
             if (response.statusCode() == 200) {
                 JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
-                JsonObject userJson = jsonResponse.getAsJsonObject("user");
-                
-                User updatedUser = new User(
-                    userJson.get("id").getAsString(),
-                    userJson.get("username").getAsString(),
-                    userJson.get("role").getAsString()
-                );
+                User updatedUser = parseUser(jsonResponse.getAsJsonObject("user"));
                 
                 logger.info("User updated: " + updatedUser.getUsername());
                 return new ApiResponse<>(true, updatedUser, null);
             }
             
-            return new ApiResponse<>(false, null, "Failed to update user");
-            
-        } catch (Exception e) {
-            logger.error("Update user error", e);
-            return new ApiResponse<>(false, null, "Failed to update user: " + e.getMessage());
-        }
+            return new ApiResponse<User>(false, null, "Failed to update user");
+        }, apiExecutor).exceptionally(e -> failure("Update user error", "Failed to update user", e));
     }
     
     /**
      * Delete user (Admin only)
      */
     public static ApiResponse<Void> deleteUser(String userId) {
-        try {
-            String token = SessionManager.getInstance().getAccessToken();
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/users/" + userId))
-                    .header("Authorization", "Bearer " + token)
-                    .DELETE()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
+        return deleteUserAsync(userId).join();
+    }
+    
+    public static CompletableFuture<ApiResponse<Void>> deleteUserAsync(String userId) {
+        String token = SessionManager.getInstance().getAccessToken();
+        
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/users/" + userId))
+                .header("Authorization", "Bearer " + token)
+                .DELETE()
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.USERS).thenApply(response -> {
             if (response.statusCode() == 200) {
                 logger.info("User deleted: " + userId);
-                return new ApiResponse<>(true, null, null);
+                return new ApiResponse<Void>(true, null, null);
             }
             
-            return new ApiResponse<>(false, null, "Failed to delete user");
-            
-        } catch (Exception e) {
-            logger.error("Delete user error", e);
-            return new ApiResponse<>(false, null, "Failed to delete user: " + e.getMessage());
-        }
+            return new ApiResponse<Void>(false, null, "Failed to delete user");
+        }).exceptionally(e -> failure("Delete user error", "Failed to delete user", e));
     }
     
     /**
      * Initialize database
      */
     public static ApiResponse<Void> initializeDatabase() {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(Config.API_BASE_URL + "/init"))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
-                    .POST(HttpRequest.BodyPublishers.ofString("{}"))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
+        return initializeDatabaseAsync().join();
+    }
+    
+    public static CompletableFuture<ApiResponse<Void>> initializeDatabaseAsync() {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/init"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+        
+        return sendAsync(request, HttpPolicy.Endpoint.INIT).thenApply(response -> {
             if (response.statusCode() == 200) {
                 logger.info("Database initialized successfully");
-                return new ApiResponse<>(true, null, null);
+                return new ApiResponse<Void>(true, null, null);
             }
             
-            return new ApiResponse<>(false, null, "Failed to initialize database");
-            
-        } catch (Exception e) {
-            logger.error("Initialize database error", e);
-            return new ApiResponse<>(false, null, "Failed to initialize database: " + e.getMessage());
+            return new ApiResponse<Void>(false, null, "Failed to initialize database");
+        }).exceptionally(e -> failure("Initialize database error", "Failed to initialize database", e));
+    }
+    
+    /**
+     * Stop the API executor on application exit
+     */
+    public static void shutdown() {
+        logger.info("HTTP policy stats: " + HttpPolicy.describeStats());
+        apiExecutor.shutdownNow();
+    }
+    
+    // ============================================
+    // HELPERS
+    // ============================================
+    
+    private static CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request, HttpPolicy.Endpoint endpoint) {
+        return HttpPolicy.sendAsync(httpClient, request, HttpResponse.BodyHandlers.ofString(), endpoint);
+    }
+    
+    private static User parseUser(JsonObject userJson) {
+        return new User(
+            userJson.get("id").getAsString(),
+            userJson.get("username").getAsString(),
+            userJson.get("role").getAsString()
+        );
+    }
+    
+    private static <T> ApiResponse<T> failure(String logMessage, String errorPrefix, Throwable e) {
+        Throwable cause = unwrap(e);
+        logger.error(logMessage, cause);
+        return new ApiResponse<>(false, null, errorPrefix + ": " + cause.getMessage());
+    }
+    
+    static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+    
+    /**
+     * Named daemon threads so pending API work never keeps the JVM alive
+     */
+    private static class ApiThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "k4j-api-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
     
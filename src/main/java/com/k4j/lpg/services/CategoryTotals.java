@@ -0,0 +1,50 @@
+package com.k4j.lpg.services;
+
+/**
+ * Product count, units on hand and stock value of one category.
+ */
+public class CategoryTotals {
+    
+    public static final CategoryTotals EMPTY = new CategoryTotals(0, 0, 0);
+    
+    private final int products;
+    private final long quantity;
+    private final double stockValue;
+    
+    public CategoryTotals(int products, long quantity, double stockValue) {
+        this.products = products;
+        this.quantity = quantity;
+        this.stockValue = stockValue;
+    }
+    
+    public int getProducts() {
+        return products;
+    }
+    
+    public long getQuantity() {
+        return quantity;
+    }
+    
+    /**
+     * Sum of quantity times price.
+     */
+    public double getStockValue() {
+        return stockValue;
+    }
+    
+    /**
+     * These totals with one product's contribution added (sign 1) or taken away (sign -1).
+     */
+    public CategoryTotals plus(int sign, int quantity, double stockValue) {
+        return new CategoryTotals(products + sign, this.quantity + (long) sign * quantity, this.stockValue + sign * stockValue);
+    }
+    
+    @Override
+    public String toString() {
+        return "CategoryTotals{" +
+                "products=" + products +
+                ", quantity=" + quantity +
+                String.format(", stockValue=%.2f", stockValue) +
+                '}';
+    }
+}
@@ -0,0 +1,404 @@
+package com.k4j.lpg.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small bounded pool of long-lived SQLite connections.
+ *
+ * SQLite allows a single writer at a time, so the pool keeps exactly one
+ * writer connection (reentrant per thread, so nested service calls share it)
+ * and up to N reader connections. Connections handed out are proxies whose
+ * close() returns them to the pool instead of closing the database file, so
+ * existing try-with-resources code keeps working unchanged.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final String url;
+    private final LocalDbProfile profile;
+    private final int maxReaders;
+    private final long acquireTimeoutMillis;
+
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private Connection writer;
+
+    private final BlockingQueue<Connection> idleReaders = new LinkedBlockingQueue<>();
+    private final List<Connection> allReaders = new ArrayList<>();
+
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong readerAcquires = new AtomicLong();
+    private final AtomicLong writerAcquires = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicInteger readersInUse = new AtomicInteger();
+
+    public ConnectionPool(String url, LocalDbProfile profile, int maxReaders, long acquireTimeoutMillis) {
+        this.url = url;
+        this.profile = profile;
+        this.maxReaders = Math.max(1, maxReaders);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Borrow the writer connection. Blocks until no other thread holds it;
+     * the calling thread may borrow it again while already holding it.
+     */
+    public Connection getWriteConnection() throws SQLException {
+        ensureOpen();
+        long start = System.nanoTime();
+        try {
+            if (!writerLock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLException("Timed out waiting for the local database writer connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer connection", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+        writerAcquires.incrementAndGet();
+
+        try {
+            if (writer == null || writer.isClosed()) {
+                writer = openConnection();
+            }
+        } catch (SQLException e) {
+            writerLock.unlock();
+            throw e;
+        }
+        return wrap(writer, true);
+    }
+
+    /**
+     * Borrow a reader connection. If the calling thread already holds the
+     * writer, that connection is returned instead so reads inside a write
+     * transaction see its uncommitted changes.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (writerLock.isHeldByCurrentThread()) {
+            return getWriteConnection();
+        }
+        ensureOpen();
+        long start = System.nanoTime();
+
+        Connection conn = idleReaders.poll();
+        if (conn == null) {
+            conn = openReaderIfBelowLimit();
+        }
+        if (conn == null) {
+            try {
+                conn = idleReaders.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a reader connection", e);
+            }
+            if (conn == null) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLException("Timed out waiting for a local database reader connection");
+            }
+        }
+
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+        readerAcquires.incrementAndGet();
+        readersInUse.incrementAndGet();
+        return wrap(conn, false);
+    }
+
+    private Connection openReaderIfBelowLimit() throws SQLException {
+        synchronized (allReaders) {
+            if (allReaders.size() >= maxReaders) {
+                return null;
+            }
+            Connection conn = openConnection();
+            allReaders.add(conn);
+            return conn;
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        configure(conn);
+        connectionsOpened.incrementAndGet();
+        logger.debug("Opened pooled SQLite connection #" + connectionsOpened.get());
+        return conn;
+    }
+
+    /**
+     * Per-connection settings, applied once when the connection is opened.
+     */
+    protected void configure(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String pragma : profile.connectionPragmas()) {
+                stmt.execute(pragma);
+            }
+        }
+    }
+
+    private void release(Connection conn, boolean isWriter) {
+        if (isWriter) {
+            try {
+                if (writerLock.getHoldCount() == 1) {
+                    resetState(conn);
+                }
+            } finally {
+                writerLock.unlock();
+            }
+            return;
+        }
+
+        readersInUse.decrementAndGet();
+        if (closed || !resetState(conn)) {
+            discardReader(conn);
+            return;
+        }
+        idleReaders.offer(conn);
+    }
+
+    /**
+     * Roll back anything a caller left open and restore auto-commit.
+     * Returns false if the connection is no longer usable.
+     */
+    private boolean resetState(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Discarding pooled connection after reset failure: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void discardReader(Connection conn) {
+        synchronized (allReaders) {
+            allReaders.remove(conn);
+        }
+        closeQuietly(conn);
+    }
+
+    private Connection wrap(Connection target, boolean isWriter) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!released) {
+                            released = true;
+                            release(target, isWriter);
+                        }
+                        return null;
+                    case "isClosed":
+                        return released || target.isClosed();
+                    case "unwrap":
+                        if (((Class<?>) args[0]).isInstance(target)) {
+                            return target;
+                        }
+                        break;
+                    default:
+                        if (released) {
+                            throw new SQLException("Connection has already been returned to the pool");
+                        }
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+    }
+
+    /**
+     * Check that the pool can still serve a trivial query.
+     */
+    public boolean isHealthy() {
+        if (closed) {
+            return false;
+        }
+        try (Connection conn = getReadConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT 1");
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Local database health check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public LocalDbProfile getProfile() {
+        return profile;
+    }
+
+    public PoolStats getStats() {
+        int openReaders;
+        synchronized (allReaders) {
+            openReaders = allReaders.size();
+        }
+        long acquires = readerAcquires.get() + writerAcquires.get();
+        return new PoolStats(
+            openReaders,
+            idleReaders.size(),
+            readersInUse.get(),
+            maxReaders,
+            writerLock.isLocked(),
+            connectionsOpened.get(),
+            readerAcquires.get(),
+            writerAcquires.get(),
+            acquireTimeouts.get(),
+            acquires == 0 ? 0 : totalWaitNanos.get() / acquires / 1000
+        );
+    }
+
+    /**
+     * Close every pooled connection. Further borrows fail.
+     */
+    public void close() {
+        closed = true;
+        synchronized (allReaders) {
+            allReaders.forEach(this::closeQuietly);
+            allReaders.clear();
+        }
+        idleReaders.clear();
+
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                closeQuietly(writer);
+                writer = null;
+            }
+        } finally {
+            writerLock.unlock();
+        }
+        logger.info("Connection pool closed: " + getStats());
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+    }
+
+    private void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Point-in-time snapshot of pool size and usage counters
+     */
+    public static class PoolStats {
+        private final int openReaders;
+        private final int idleReaders;
+        private final int readersInUse;
+        private final int maxReaders;
+        private final boolean writerBusy;
+        private final long connectionsOpened;
+        private final long readerAcquires;
+        private final long writerAcquires;
+        private final long acquireTimeouts;
+        private final long averageWaitMicros;
+
+        public PoolStats(int openReaders, int idleReaders, int readersInUse, int maxReaders,
+                         boolean writerBusy, long connectionsOpened, long readerAcquires,
+                         long writerAcquires, long acquireTimeouts, long averageWaitMicros) {
+            this.openReaders = openReaders;
+            this.idleReaders = idleReaders;
+            this.readersInUse = readersInUse;
+            this.maxReaders = maxReaders;
+            this.writerBusy = writerBusy;
+            this.connectionsOpened = connectionsOpened;
+            this.readerAcquires = readerAcquires;
+            this.writerAcquires = writerAcquires;
+            this.acquireTimeouts = acquireTimeouts;
+            this.averageWaitMicros = averageWaitMicros;
+        }
+
+        public int getOpenReaders() {
+            return openReaders;
+        }
+
+        public int getIdleReaders() {
+            return idleReaders;
+        }
+
+        public int getReadersInUse() {
+            return readersInUse;
+        }
+
+        public int getMaxReaders() {
+            return maxReaders;
+        }
+
+        public boolean isWriterBusy() {
+            return writerBusy;
+        }
+
+        public long getConnectionsOpened() {
+            return connectionsOpened;
+        }
+
+        public long getReaderAcquires() {
+            return readerAcquires;
+        }
+
+        public long getWriterAcquires() {
+            return writerAcquires;
+        }
+
+        public long getAcquireTimeouts() {
+            return acquireTimeouts;
+        }
+
+        public long getAverageWaitMicros() {
+            return averageWaitMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{" +
+                    "readers=" + openReaders + "/" + maxReaders +
+                    ", idle=" + idleReaders +
+                    ", inUse=" + readersInUse +
+                    ", writerBusy=" + writerBusy +
+                    ", opened=" + connectionsOpened +
+                    ", readerAcquires=" + readerAcquires +
+                    ", writerAcquires=" + writerAcquires +
+                    ", timeouts=" + acquireTimeouts +
+                    ", avgWaitUs=" + averageWaitMicros +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.k4j.lpg.services;
+
+import java.util.Map;
+
+/**
+ * Everything the dashboard header cards show, aggregated in SQL so they can
+ * render before (or without) the product table being loaded.
+ */
+public class DashboardSummary {
+    
+    private final ProductCounts products;
+    private final int users;
+    private final Map<String, CategoryTotals> categories;
+    
+    public DashboardSummary(ProductCounts products, int users, Map<String, CategoryTotals> categories) {
+        this.products = products;
+        this.users = users;
+        this.categories = categories;
+    }
+    
+    public ProductCounts getProducts() {
+        return products;
+    }
+    
+    public int getUsers() {
+        return users;
+    }
+    
+    /**
+     * Totals per category, ordered by category name.
+     */
+    public Map<String, CategoryTotals> getCategories() {
+        return categories;
+    }
+    
+    @Override
+    public String toString() {
+        return "DashboardSummary{" +
+                "products=" + products +
+                ", users=" + users +
+                ", categories=" + categories.size() +
+                '}';
+    }
+}
@@ -0,0 +1,369 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.utils.Config;
+import com.k4j.lpg.utils.NetworkChecker;
+import com.k4j.lpg.utils.SharedHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timeout, retry and circuit-breaker policy for calls to the server.
+ *
+ * Every request gets the timeout of its {@link Endpoint}. Idempotent
+ * endpoints are retried on connection errors and 502/503/504 with
+ * exponential backoff and full jitter. All endpoints share one circuit
+ * breaker, since they all depend on the same host: after
+ * Config.HTTP_CIRCUIT_FAILURE_THRESHOLD consecutive failures (I/O errors,
+ * timeouts or 5xx) it opens and requests fail immediately with
+ * {@link CircuitOpenException}, which callers already treat like being
+ * offline and answer from the local cache. After Config.HTTP_CIRCUIT_OPEN_SECONDS
+ * a single trial request is let through; its outcome closes or re-opens
+ * the circuit.
+ */
+public class HttpPolicy {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HttpPolicy.class);
+    
+    /**
+     * Server calls grouped by how long they may take and whether they are safe to repeat.
+     */
+    public enum Endpoint {
+        SIGN_IN(Config.HTTP_TIMEOUT_AUTH_SECONDS, false),
+        SIGN_UP(Config.HTTP_TIMEOUT_AUTH_SECONDS, false),
+        SESSION(Config.HTTP_TIMEOUT_AUTH_SECONDS, true),
+        PRODUCT_SYNC(Config.HTTP_TIMEOUT_SYNC_SECONDS, true),
+        OUTBOX_REPLAY(Config.HTTP_TIMEOUT_SYNC_SECONDS, false),
+        USERS(Config.HTTP_TIMEOUT_DEFAULT_SECONDS, false),
+        INIT(Config.HTTP_TIMEOUT_DEFAULT_SECONDS, false);
+        
+        private final Duration timeout;
+        private final boolean retryable;
+        
+        Endpoint(long timeoutSeconds, boolean retryable) {
+            this.timeout = Duration.ofSeconds(timeoutSeconds);
+            this.retryable = retryable;
+        }
+        
+        public Duration getTimeout() {
+            return timeout;
+        }
+        
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+    
+    public enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    // Circuit breaker (guarded by the class monitor)
+    private static CircuitState state = CircuitState.CLOSED;
+    private static int consecutiveFailures;
+    private static long openUntilMillis;
+    private static boolean trialInFlight;
+    
+    // Metrics
+    private static final Map<Endpoint, Counters> counters = new EnumMap<>(Endpoint.class);
+    private static final AtomicLong trips = new AtomicLong();
+    
+    static {
+        for (Endpoint endpoint : Endpoint.values()) {
+            counters.put(endpoint, new Counters());
+        }
+    }
+    
+    private HttpPolicy() {
+        // Static utility
+    }
+    
+    /**
+     * Send a request under the endpoint's policy. Completes exceptionally
+     * with the last I/O error, or with CircuitOpenException without sending
+     * anything while the circuit is open. 5xx responses that survive the
+     * retries are returned as-is for the caller to handle.
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpClient client, HttpRequest request,
+                                                                   HttpResponse.BodyHandler<T> handler, Endpoint endpoint) {
+        HttpRequest timed = HttpRequest.newBuilder(request, (name, value) -> true)
+                .timeout(endpoint.getTimeout())
+                .build();
+        return attempt(client, timed, handler, endpoint, 1);
+    }
+    
+    /**
+     * Blocking variant for callers already on a background thread.
+     */
+    public static <T> HttpResponse<T> send(HttpClient client, HttpRequest request,
+                                           HttpResponse.BodyHandler<T> handler, Endpoint endpoint)
+            throws IOException, InterruptedException {
+        try {
+            return sendAsync(client, request, handler, endpoint).get();
+        } catch (ExecutionException e) {
+            Throwable cause = ApiService.unwrap(e.getCause());
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    private static <T> CompletableFuture<HttpResponse<T>> attempt(HttpClient client, HttpRequest request,
+                                                                  HttpResponse.BodyHandler<T> handler,
+                                                                  Endpoint endpoint, int attempt) {
+        Counters stats = counters.get(endpoint);
+        if (!allowRequest()) {
+            stats.shortCircuited.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitOpenException(endpoint));
+        }
+        
+        stats.calls.incrementAndGet();
+        long start = System.nanoTime();
+        return client.sendAsync(request, handler).handle((response, error) -> {
+            stats.recordLatency((System.nanoTime() - start) / 1000);
+            if (response != null) {
+                SharedHttpClient.recordResponse(response);
+            }
+            
+            Throwable cause = error != null ? ApiService.unwrap(error) : null;
+            boolean failed = cause != null || response.statusCode() >= 500;
+            if (failed) {
+                stats.failures.incrementAndGet();
+                onFailure();
+            } else {
+                onSuccess();
+            }
+            
+            if (failed && shouldRetry(endpoint, attempt, response, cause)) {
+                closeQuietly(response);
+                stats.retries.incrementAndGet();
+                long delay = backoffMillis(attempt);
+                logger.debug(endpoint + " attempt " + attempt + " failed, retrying in " + delay + " ms");
+                
+                Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+                return CompletableFuture.runAsync(() -> { }, delayed)
+                        .thenCompose(ignored -> attempt(client, request, handler, endpoint, attempt + 1));
+            }
+            return cause != null
+                    ? CompletableFuture.<HttpResponse<T>>failedFuture(cause)
+                    : CompletableFuture.completedFuture(response);
+        }).thenCompose(next -> next);
+    }
+    
+    private static boolean shouldRetry(Endpoint endpoint, int attempt, HttpResponse<?> response, Throwable cause) {
+        if (!endpoint.isRetryable() || attempt >= Config.HTTP_RETRY_MAX_ATTEMPTS) {
+            return false;
+        }
+        if (cause != null) {
+            return cause instanceof IOException;
+        }
+        int status = response.statusCode();
+        return status == 502 || status == 503 || status == 504;
+    }
+    
+    // Full jitter: uniform in [0, min(max, base * 2^(attempt-1))]
+    private static long backoffMillis(int attempt) {
+        long cap = Math.min(Config.HTTP_RETRY_MAX_DELAY_MS, Config.HTTP_RETRY_BASE_DELAY_MS << (attempt - 1));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+    
+    // A discarded streaming body must be closed or its connection is never released
+    private static void closeQuietly(HttpResponse<?> response) {
+        if (response != null && response.body() instanceof AutoCloseable body) {
+            try {
+                body.close();
+            } catch (Exception e) {
+                logger.debug("Failed to close discarded response body", e);
+            }
+        }
+    }
+    
+    // ============================================
+    // CIRCUIT BREAKER
+    // ============================================
+    
+    private static synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() < openUntilMillis) {
+                    return false;
+                }
+                state = CircuitState.HALF_OPEN;
+                trialInFlight = true;
+                logger.info("Circuit half-open, sending a trial request");
+                return true;
+            default:
+                // Half-open: only the one trial request at a time
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+    
+    private static synchronized void onSuccess() {
+        if (state != CircuitState.CLOSED) {
+            logger.info("Circuit closed, server reachable again");
+        }
+        state = CircuitState.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+    
+    private static synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == CircuitState.HALF_OPEN
+                || (state == CircuitState.CLOSED && consecutiveFailures >= Config.HTTP_CIRCUIT_FAILURE_THRESHOLD)) {
+            state = CircuitState.OPEN;
+            openUntilMillis = System.currentTimeMillis() + Config.HTTP_CIRCUIT_OPEN_SECONDS * 1000;
+            trips.incrementAndGet();
+            logger.warn("Circuit opened after " + consecutiveFailures + " consecutive failures; "
+                + "serving local data for " + Config.HTTP_CIRCUIT_OPEN_SECONDS + " s");
+            // Let the connectivity monitor confirm whether we are actually offline
+            NetworkChecker.refresh();
+        }
+    }
+    
+    public static synchronized CircuitState getCircuitState() {
+        return state;
+    }
+    
+    // ============================================
+    // METRICS
+    // ============================================
+    
+    public static EndpointStats getStats(Endpoint endpoint) {
+        Counters c = counters.get(endpoint);
+        return new EndpointStats(endpoint, c.calls.get(), c.failures.get(), c.retries.get(),
+            c.shortCircuited.get(), c.totalLatencyMicros.get(), c.maxLatencyMicros.get());
+    }
+    
+    public static long getCircuitTrips() {
+        return trips.get();
+    }
+    
+    /**
+     * One line per endpoint that has been used, for logging at shutdown.
+     */
+    public static String describeStats() {
+        StringBuilder sb = new StringBuilder("circuit=" + getCircuitState() + ", trips=" + trips.get());
+        for (Endpoint endpoint : Endpoint.values()) {
+            EndpointStats stats = getStats(endpoint);
+            if (stats.getCalls() > 0 || stats.getShortCircuited() > 0) {
+                sb.append("\n  ").append(stats);
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static class Counters {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong shortCircuited = new AtomicLong();
+        private final AtomicLong totalLatencyMicros = new AtomicLong();
+        private final AtomicLong maxLatencyMicros = new AtomicLong();
+        
+        void recordLatency(long micros) {
+            totalLatencyMicros.addAndGet(micros);
+            maxLatencyMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+    
+    /**
+     * Thrown instead of sending a request while the circuit is open
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        public CircuitOpenException(Endpoint endpoint) {
+            super("Server unavailable (circuit open), skipped " + endpoint);
+        }
+    }
+    
+    /**
+     * Point-in-time counters for one endpoint
+     */
+    public static class EndpointStats {
+        private final Endpoint endpoint;
+        private final long calls;
+        private final long failures;
+        private final long retries;
+        private final long shortCircuited;
+        private final long totalLatencyMicros;
+        private final long maxLatencyMicros;
+        
+        public EndpointStats(Endpoint endpoint, long calls, long failures, long retries, long shortCircuited,
+                             long totalLatencyMicros, long maxLatencyMicros) {
+            this.endpoint = endpoint;
+            this.calls = calls;
+            this.failures = failures;
+            this.retries = retries;
+            this.shortCircuited = shortCircuited;
+            this.totalLatencyMicros = totalLatencyMicros;
+            this.maxLatencyMicros = maxLatencyMicros;
+        }
+        
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+        
+        public long getCalls() {
+            return calls;
+        }
+        
+        public long getFailures() {
+            return failures;
+        }
+        
+        public long getRetries() {
+            return retries;
+        }
+        
+        public long getShortCircuited() {
+            return shortCircuited;
+        }
+        
+        public long getAverageLatencyMicros() {
+            return calls == 0 ? 0 : totalLatencyMicros / calls;
+        }
+        
+        public long getMaxLatencyMicros() {
+            return maxLatencyMicros;
+        }
+        
+        @Override
+        public String toString() {
+            return "EndpointStats{" +
+                    "endpoint=" + endpoint +
+                    ", calls=" + calls +
+                    ", failures=" + failures +
+                    ", retries=" + retries +
+                    ", shortCircuited=" + shortCircuited +
+                    ", avgLatencyMs=" + getAverageLatencyMicros() / 1000 +
+                    ", maxLatencyMs=" + maxLatencyMicros / 1000 +
+                    '}';
+        }
+    }
+}
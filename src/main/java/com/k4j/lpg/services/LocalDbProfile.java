@@ -0,0 +1,69 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.utils.Config;
+
+import java.util.List;
+
+/**
+ * Durability/performance presets for the local SQLite cache.
+ *
+ * SAFE keeps SQLite defaults (rollback journal, synchronous=FULL). BALANCED
+ * switches to WAL so readers never wait on the writer, and relaxes fsyncs to
+ * checkpoints only; a power cut can lose the last few committed transactions
+ * but never corrupts the file. FAST also disables fsync entirely and is only
+ * meant for throwaway databases (seeding, benchmarks).
+ */
+public enum LocalDbProfile {
+    SAFE("DELETE", "FULL"),
+    BALANCED("WAL", "NORMAL"),
+    FAST("WAL", "OFF");
+    
+    private final String journalMode;
+    private final String synchronous;
+    
+    LocalDbProfile(String journalMode, String synchronous) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+    }
+    
+    public String getJournalMode() {
+        return journalMode;
+    }
+    
+    public String getSynchronous() {
+        return synchronous;
+    }
+    
+    public boolean isWal() {
+        return "WAL".equals(journalMode);
+    }
+    
+    /**
+     * Pragmas that only last for the lifetime of a connection and therefore
+     * have to be applied to every pooled connection when it is opened.
+     */
+    public List<String> connectionPragmas() {
+        return List.of(
+            "PRAGMA synchronous = " + synchronous,
+            "PRAGMA cache_size = -" + Config.LOCAL_DB_CACHE_SIZE_KB,
+            "PRAGMA mmap_size = " + Config.LOCAL_DB_MMAP_SIZE_BYTES,
+            "PRAGMA temp_store = MEMORY",
+            "PRAGMA busy_timeout = " + Config.LOCAL_DB_BUSY_TIMEOUT_MS,
+            "PRAGMA foreign_keys = ON"
+        );
+    }
+    
+    /**
+     * Resolve a profile name from configuration, defaulting to BALANCED.
+     */
+    public static LocalDbProfile fromName(String name) {
+        if (name != null) {
+            for (LocalDbProfile profile : values()) {
+                if (profile.name().equalsIgnoreCase(name.trim())) {
+                    return profile;
+                }
+            }
+        }
+        return BALANCED;
+    }
+}
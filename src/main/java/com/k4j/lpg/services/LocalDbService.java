@@ -1,20 +1,65 @@
 package com.k4j.lpg.services;
 
-import com.k4j.lpg.models.Product;
+import com.k4j.lpg.models.CheckoutLine;
+import com.k4j.lpg.models.ProductRecord;
+import com.k4j.lpg.models.StockMovement;
 import com.k4j.lpg.models.User;
+import com.k4j.lpg.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class LocalDbService {
     
+    private static final Logger logger = LoggerFactory.getLogger(LocalDbService.class);
     private static final String DB_URL = "jdbc:sqlite:k4j_cache.db";
     
+    // Outbox operations recorded for local product mutations
+    public static final String OUTBOX_CREATE = "create";
+    public static final String OUTBOX_UPDATE = "update";
+    public static final String OUTBOX_DELETE = "delete";
+    public static final String OUTBOX_ADJUST = "adjust";
+    
+    private static final String INCREMENT_QUANTITY_SQL =
+        "UPDATE products SET quantity = quantity + ?, last_updated = strftime('%s','now') "
+        + "WHERE id = ? AND quantity + ? >= 0 RETURNING *";
+    
+    // Each subquery is answered from an index rather than one scan of the table:
+    // idx_products_low_stock, idx_products_quantity and the covering idx_products_valuation
+    private static final String PRODUCT_COUNTS_COLUMNS =
+        "(SELECT COUNT(*) FROM products), "
+        + "(SELECT COUNT(*) FROM products WHERE quantity <= low_stock_threshold), "
+        + "(SELECT COUNT(*) FROM products WHERE quantity <= 0), "
+        + "(SELECT TOTAL(quantity * price) FROM products)";
+    
+    // Long-lived connections shared by every method below (one writer, N readers)
+    private static final LocalDbProfile profile = LocalDbProfile.fromName(Config.LOCAL_DB_PROFILE);
+    private static final ConnectionPool pool = new ConnectionPool(
+        DB_URL, profile, Config.LOCAL_DB_READER_CONNECTIONS + Config.LOCAL_DB_REPORT_READER_CONNECTIONS,
+        Config.LOCAL_DB_ACQUIRE_TIMEOUT_MS);
+    private static final WalCheckpointScheduler checkpointScheduler = new WalCheckpointScheduler(
+        pool, Config.LOCAL_DB_CHECKPOINT_INTERVAL_SECONDS, Config.LOCAL_DB_WAL_TRUNCATE_PAGES);
+    
     public static void initialize() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              Statement stmt = conn.createStatement()) {
             
+            // Journal mode is stored in the database file, so it only needs to be set here
+            try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = " + profile.getJournalMode())) {
+                String mode = rs.next() ? rs.getString(1) : "unknown";
+                logger.info("Local database profile " + profile + " (journal_mode=" + mode + ")");
+            }
+            if (profile.isWal()) {
+                stmt.execute("PRAGMA wal_autocheckpoint = " + Config.LOCAL_DB_WAL_AUTOCHECKPOINT_PAGES);
+            }
+            
             // Create products table
             stmt.execute("""
                 CREATE TABLE IF NOT EXISTS products (
@@ -78,63 +123,389 @@ public class LocalDbService {
                     last_sync INTEGER DEFAULT (strftime('%s','now'))
                 )
             """);
+            
+            // Create outbox of product mutations not yet pushed to the server
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS outbox (
+                    seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                    product_id TEXT NOT NULL,
+                    op TEXT NOT NULL,
+                    created_at INTEGER DEFAULT (strftime('%s','now')),
+                    attempts INTEGER DEFAULT 0,
+                    last_error TEXT
+                )
+            """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_outbox_product ON outbox(product_id, seq)");
+            // Relative quantity change carried by 'adjust' entries
+            if (!hasColumn(stmt, "outbox", "delta")) {
+                stmt.execute("ALTER TABLE outbox ADD COLUMN delta INTEGER");
+            }
+            // Retry backoff and dead-letter state of rejected entries
+            if (!hasColumn(stmt, "outbox", "next_attempt_at")) {
+                stmt.execute("ALTER TABLE outbox ADD COLUMN next_attempt_at INTEGER DEFAULT 0");
+            }
+            if (!hasColumn(stmt, "outbox", "parked")) {
+                stmt.execute("ALTER TABLE outbox ADD COLUMN parked INTEGER DEFAULT 0");
+            }
+            // Last seq of the adjust range an entry was first sent in (see claimOutboxAdjustments)
+            if (!hasColumn(stmt, "outbox", "range_end")) {
+                stmt.execute("ALTER TABLE outbox ADD COLUMN range_end INTEGER");
+            }
+            
+            createSearchIndex(stmt);
+            createStockLedger(stmt);
+            
+            // One (key, id) index per sort key for keyset pagination
+            for (ProductSort sort : ProductSort.values()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS " + sort.indexName()
+                    + " ON products(" + sort.getColumn() + ", id)");
+            }
+            
+            // Dashboard aggregates: the partial index holds only low-stock rows, so
+            // counting them reads just those; the covering index answers the
+            // per-category sums without touching the table
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_products_low_stock ON products(low_stock_threshold) "
+                + "WHERE quantity <= low_stock_threshold");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_products_valuation ON products(category, quantity, price)");
+        }
+        
+        if (profile.isWal()) {
+            checkpointScheduler.start();
         }
     }
     
-    // Cache products
-    public static void cacheProducts(List<Product> products) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            // Clear old data
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute("DELETE FROM products");
-            }
-            
-            // Insert new data
-            String sql = "INSERT INTO products (id, name, category, quantity, price, low_stock_threshold) VALUES (?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                for (Product p : products) {
-                    pstmt.setString(1, p.getId());
-                    pstmt.setString(2, p.getName());
-                    pstmt.setString(3, p.getCategory());
-                    pstmt.setInt(4, p.getQuantity());
-                    pstmt.setDouble(5, p.getPrice());
-                    pstmt.setInt(6, p.getLowStockThreshold());
-                    pstmt.executeUpdate();
+    private static boolean hasColumn(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
                 }
             }
+        }
+        return false;
+    }
+    
+    // Full-text index over product name/category, kept in sync by triggers.
+    // External content: the FTS table stores only the index and reads rows
+    // back from products by rowid.
+    private static void createSearchIndex(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery(
+                 "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'products_fts'")) {
+            exists = rs.next();
+        }
+        
+        stmt.execute("""
+            CREATE VIRTUAL TABLE IF NOT EXISTS products_fts USING fts5(
+                name, category,
+                content = 'products', content_rowid = 'rowid',
+                tokenize = 'unicode61 remove_diacritics 2',
+                prefix = '2 3'
+            )
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_fts_ai AFTER INSERT ON products BEGIN
+                INSERT INTO products_fts (rowid, name, category) VALUES (new.rowid, new.name, new.category);
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_fts_ad AFTER DELETE ON products BEGIN
+                INSERT INTO products_fts (products_fts, rowid, name, category)
+                VALUES ('delete', old.rowid, old.name, old.category);
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_fts_au AFTER UPDATE OF name, category ON products BEGIN
+                INSERT INTO products_fts (products_fts, rowid, name, category)
+                VALUES ('delete', old.rowid, old.name, old.category);
+                INSERT INTO products_fts (rowid, name, category) VALUES (new.rowid, new.name, new.category);
+            END
+        """);
+        
+        // Index rows that existed before the FTS table did
+        if (!exists) {
+            stmt.execute("INSERT INTO products_fts (products_fts) VALUES ('rebuild')");
+            logger.info("Built product full-text index");
+        }
+    }
+    
+    // Append-only stock ledger. Triggers on products append one movement per
+    // quantity change, so products.quantity is always the running total of its
+    // movements no matter which path wrote it (edits, bulk sync, deletes). The
+    // reason and user of the change in progress are read from a one-row
+    // context table that local edits set inside their transaction; changes
+    // made without one (a sync) are recorded as 'sync'.
+    private static void createStockLedger(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery(
+                 "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'stock_movements'")) {
+            exists = rs.next();
+        }
+        
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS stock_movements (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                product_id TEXT NOT NULL,
+                delta INTEGER NOT NULL,
+                reason TEXT NOT NULL,
+                user_id TEXT,
+                created_at INTEGER NOT NULL DEFAULT (strftime('%s','now'))
+            )
+        """);
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_stock_movements_product ON stock_movements(product_id, created_at)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_stock_movements_time ON stock_movements(created_at)");
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS stock_movement_context (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                reason TEXT,
+                user_id TEXT
+            )
+        """);
+        stmt.execute("INSERT OR IGNORE INTO stock_movement_context (id) VALUES (1)");
+        
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS stock_movements_no_update BEFORE UPDATE ON stock_movements BEGIN
+                SELECT RAISE(ABORT, 'stock_movements is append-only');
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS stock_movements_no_delete BEFORE DELETE ON stock_movements BEGIN
+                SELECT RAISE(ABORT, 'stock_movements is append-only');
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_stock_ai AFTER INSERT ON products WHEN new.quantity <> 0 BEGIN
+                INSERT INTO stock_movements (product_id, delta, reason, user_id)
+                SELECT new.id, new.quantity, COALESCE(reason, 'sync'), user_id FROM stock_movement_context WHERE id = 1;
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_stock_au AFTER UPDATE OF quantity ON products
+            WHEN new.quantity <> old.quantity BEGIN
+                INSERT INTO stock_movements (product_id, delta, reason, user_id)
+                SELECT new.id, new.quantity - old.quantity, COALESCE(reason, 'sync'), user_id FROM stock_movement_context WHERE id = 1;
+            END
+        """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS products_stock_ad AFTER DELETE ON products WHEN old.quantity <> 0 BEGIN
+                INSERT INTO stock_movements (product_id, delta, reason, user_id)
+                SELECT old.id, -old.quantity, COALESCE(reason, 'sync'), user_id FROM stock_movement_context WHERE id = 1;
+            END
+        """);
+        
+        // Open the ledger with the stock that existed before it did
+        if (!exists) {
+            int opened = stmt.executeUpdate(
+                "INSERT INTO stock_movements (product_id, delta, reason) "
+                + "SELECT id, quantity, '" + StockMovement.REASON_OPENING + "' FROM products WHERE quantity <> 0");
+            logger.info("Opened stock ledger with " + opened + " products");
+        }
+    }
+    
+    // Attribute the stock movements written by this transaction; pass nulls to clear
+    private static void setMovementContext(Connection conn, String reason, String userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE stock_movement_context SET reason = ?, user_id = ? WHERE id = 1")) {
+            pstmt.setString(1, reason);
+            pstmt.setString(2, userId);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    // Rebuild the full-text index from scratch (e.g. after a VACUUM renumbered rowids)
+    public static void rebuildSearchIndex() throws SQLException {
+        try (Connection conn = pool.getWriteConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO products_fts (products_fts) VALUES ('rebuild')");
+        }
+    }
+    
+    // Cache products: replace the whole table in one batched transaction
+    public static void cacheProducts(List<ProductRecord> products) throws SQLException {
+        try (ProductBulkWriter writer = openProductWriter(true)) {
+            for (ProductRecord p : products) {
+                writer.upsert(p);
+            }
             
-            // Update sync metadata
+            // Update sync metadata in the same transaction
             updateLastSync("products");
+            writer.commit();
         }
     }
     
+    // Open a batched writer on the writer connection (fullRefresh deletes rows not written)
+    public static ProductBulkWriter openProductWriter(boolean fullRefresh) throws SQLException {
+        return new ProductBulkWriter(pool.getWriteConnection(), fullRefresh, Config.LOCAL_DB_BULK_BATCH_SIZE);
+    }
+    
     // Get cached products
-    public static List<Product> getCachedProducts() throws SQLException {
-        List<Product> products = new ArrayList<>();
+    public static List<ProductRecord> getCachedProducts() throws SQLException {
+        List<ProductRecord> products = new ArrayList<>();
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM products ORDER BY name")) {
             
             while (rs.next()) {
-                Product p = new Product(
-                    rs.getString("id"),
-                    rs.getString("name"),
-                    rs.getString("category"),
-                    rs.getInt("quantity"),
-                    rs.getDouble("price"),
-                    rs.getInt("low_stock_threshold")
-                );
-                products.add(p);
+                products.add(mapProduct(rs));
             }
         }
         
         return products;
     }
     
+    // One page of products in (sort key, id) order, starting after the cursor.
+    // Seeks the sort key's index, so deep pages cost the same as the first.
+    public static ProductPage getProductsPage(ProductPage.Cursor cursor, int limit) throws SQLException {
+        String column = cursor.getSort().getColumn();
+        String direction = cursor.isDescending() ? "DESC" : "ASC";
+        
+        StringBuilder sql = new StringBuilder("SELECT * FROM products");
+        if (!cursor.isFirst()) {
+            sql.append(" WHERE (").append(column).append(", id) ")
+               .append(cursor.isDescending() ? "<" : ">").append(" (?, ?)");
+        }
+        sql.append(" ORDER BY ").append(column).append(' ').append(direction)
+           .append(", id ").append(direction).append(" LIMIT ?");
+        
+        List<ProductRecord> products = new ArrayList<>();
+        Object lastValue = null;
+        boolean hasMore = false;
+        
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            
+            int i = 1;
+            if (!cursor.isFirst()) {
+                pstmt.setObject(i++, cursor.getLastValue());
+                pstmt.setString(i++, cursor.getLastId());
+            }
+            // One extra row tells whether another page exists
+            pstmt.setInt(i, limit + 1);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                if (products.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                products.add(mapProduct(rs));
+                lastValue = rs.getObject(column);
+            }
+        }
+        
+        ProductPage.Cursor next = hasMore
+            ? new ProductPage.Cursor(cursor.getSort(), cursor.isDescending(), lastValue,
+                products.get(products.size() - 1).getId())
+            : null;
+        return new ProductPage(products, next);
+    }
+    
+    private static ProductCounts readProductCounts(ResultSet rs) throws SQLException {
+        return new ProductCounts(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDouble(4));
+    }
+    
+    // Product count, units and stock value per category, ordered by category
+    public static Map<String, CategoryTotals> getCategoryTotals() throws SQLException {
+        try (Connection conn = pool.getReadConnection()) {
+            return getCategoryTotals(conn);
+        }
+    }
+    
+    private static Map<String, CategoryTotals> getCategoryTotals(Connection conn) throws SQLException {
+        Map<String, CategoryTotals> categories = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT category, COUNT(*), TOTAL(quantity), TOTAL(quantity * price) FROM products "
+                 + "GROUP BY category ORDER BY category")) {
+            
+            while (rs.next()) {
+                String category = rs.getString(1);
+                categories.put(category != null ? category : "",
+                    new CategoryTotals(rs.getInt(2), rs.getLong(3), rs.getDouble(4)));
+            }
+        }
+        return categories;
+    }
+    
+    // Stock valuation by category, stock level and overall, scanned in parallel
+    // slices on the readers reserved by Config.LOCAL_DB_REPORT_READER_CONNECTIONS
+    public static ValuationReport buildValuationReport() throws SQLException {
+        int slices = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+            Config.LOCAL_DB_REPORT_READER_CONNECTIONS));
+        List<Connection> readers = new ArrayList<>(slices);
+        
+        try {
+            for (int i = 0; i < slices; i++) {
+                readers.add(pool.getReadConnection());
+            }
+            
+            // Open every reader's transaction while holding the writer: nothing can
+            // commit in between, so all slices read the same WAL snapshot
+            long minRowid = 0;
+            long maxRowid = -1;
+            Connection writer = pool.getWriteConnection();
+            try {
+                for (Connection reader : readers) {
+                    reader.setAutoCommit(false);
+                    try (Statement stmt = reader.createStatement();
+                         ResultSet rs = stmt.executeQuery("SELECT MIN(rowid), MAX(rowid) FROM products")) {
+                        if (rs.next() && rs.getObject(1) != null) {
+                            minRowid = rs.getLong(1);
+                            maxRowid = rs.getLong(2);
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            
+            return new ValuationReportEngine(readers, minRowid, maxRowid).run();
+        } finally {
+            // Returning a reader to the pool ends its read transaction
+            for (Connection reader : readers) {
+                reader.close();
+            }
+        }
+    }
+    
+    public static int getUserCount() throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+            
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    // Header card figures: product counts and user count in one statement, plus
+    // the per-category breakdown, all from one read connection and snapshot
+    public static DashboardSummary getDashboardSummary() throws SQLException {
+        try (Connection conn = pool.getReadConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                ProductCounts counts;
+                int users;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(
+                         "SELECT " + PRODUCT_COUNTS_COLUMNS + ", (SELECT COUNT(*) FROM users)")) {
+                    rs.next();
+                    counts = readProductCounts(rs);
+                    users = rs.getInt(5);
+                }
+                Map<String, CategoryTotals> categories = getCategoryTotals(conn);
+                conn.commit();
+                return new DashboardSummary(counts, users, categories);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+    
     // Authenticate user
     public static User authenticateUser(String username, String password) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                  "SELECT * FROM users WHERE username = ? AND password = ?")) {
             
@@ -155,7 +526,7 @@ public class LocalDbService {
     
     // Add new user
     public static void addUser(String username, String password, String role) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                  "INSERT INTO users (id, username, password, role) VALUES (?, ?, ?, ?)")) {
             
@@ -172,7 +543,7 @@ public class LocalDbService {
     public static List<User> getAllUsers() throws SQLException {
         List<User> users = new ArrayList<>();
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM users ORDER BY username")) {
             
@@ -190,28 +561,45 @@ public class LocalDbService {
     }
     
     // Add new product
-    public static Product addProduct(String name, String category, int quantity, double price) throws SQLException {
+    public static ProductRecord addProduct(String name, String category, int quantity, double price) throws SQLException {
         return addProduct(name, category, quantity, price, 20);
     }
     
     // Add new product with low stock threshold
-    public static Product addProduct(String name, String category, int quantity, double price, int lowStockThreshold) throws SQLException {
+    public static ProductRecord addProduct(String name, String category, int quantity, double price, int lowStockThreshold) throws SQLException {
+        return addProduct(name, category, quantity, price, lowStockThreshold, null);
+    }
+    
+    // Add new product; the opening stock is recorded as a movement by userId
+    public static ProductRecord addProduct(String name, String category, int quantity, double price, int lowStockThreshold,
+                                           String userId) throws SQLException {
         String productId = java.util.UUID.randomUUID().toString();
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO products (id, name, category, quantity, price, low_stock_threshold) VALUES (?, ?, ?, ?, ?, ?)")) {
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            setMovementContext(conn, StockMovement.REASON_INITIAL, userId);
             
-            pstmt.setString(1, productId);
-            pstmt.setString(2, name);
-            pstmt.setString(3, category);
-            pstmt.setInt(4, quantity);
-            pstmt.setDouble(5, price);
-            pstmt.setInt(6, lowStockThreshold);
-            pstmt.executeUpdate();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO products (id, name, category, quantity, price, low_stock_threshold) VALUES (?, ?, ?, ?, ?, ?)")) {
+                pstmt.setString(1, productId);
+                pstmt.setString(2, name);
+                pstmt.setString(3, category);
+                pstmt.setInt(4, quantity);
+                pstmt.setDouble(5, price);
+                pstmt.setInt(6, lowStockThreshold);
+                pstmt.executeUpdate();
+            }
+            
+            // The server creates the product empty; the opening stock travels as a delta
+            enqueueOutbox(conn, productId, OUTBOX_CREATE);
+            if (quantity != 0) {
+                enqueueOutbox(conn, productId, OUTBOX_ADJUST, quantity);
+            }
+            setMovementContext(conn, null, null);
+            conn.commit();
         }
         
-        return new Product(productId, name, category, quantity, price, lowStockThreshold);
+        return new ProductRecord(productId, name, category, quantity, price, lowStockThreshold);
     }
     
     // Update product
@@ -221,10 +609,64 @@ public class LocalDbService {
     
     // Update product with low stock threshold
     public static void updateProduct(String productId, String name, String category, int quantity, double price, Integer lowStockThreshold) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "UPDATE products SET name = ?, category = ?, quantity = ?, price = ?, low_stock_threshold = COALESCE(?, low_stock_threshold) WHERE id = ?")) {
+        updateProduct(productId, name, category, quantity, price, lowStockThreshold, StockMovement.REASON_ADJUSTMENT, null);
+    }
+    
+    // Update product; a quantity change is recorded as a movement with the given reason and user.
+    // Returns false if the product does not exist.
+    public static boolean updateProduct(String productId, String name, String category, int quantity, double price,
+                                        Integer lowStockThreshold, String reason, String userId) throws SQLException {
+        return updateProduct(productId, null, name, category, quantity, price, lowStockThreshold, reason, userId);
+    }
+    
+    // Update a product the caller has already read as current. The row is written only while
+    // its quantity is still current's, which saves reading the old quantity back; if it has
+    // changed since, the old quantity is read as usual. Returns false if the product does not exist.
+    public static boolean updateProduct(ProductRecord current, String name, String category, int quantity, double price,
+                                        Integer lowStockThreshold, String reason, String userId) throws SQLException {
+        return updateProduct(current.getId(), current.getQuantity(), name, category, quantity, price, lowStockThreshold, reason, userId);
+    }
+    
+    private static boolean updateProduct(String productId, Integer expectedQuantity, String name, String category, int quantity,
+                                         double price, Integer lowStockThreshold, String reason, String userId) throws SQLException {
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            setMovementContext(conn, reason, userId);
+            
+            Integer oldQuantity = expectedQuantity;
+            if (oldQuantity == null || !writeProduct(conn, productId, oldQuantity, name, category, quantity, price, lowStockThreshold)) {
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+                    pstmt.setString(1, productId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        oldQuantity = rs.getInt(1);
+                    }
+                }
+                if (!writeProduct(conn, productId, null, name, category, quantity, price, lowStockThreshold)) {
+                    return false;
+                }
+            }
             
+            // Fields are replayed as they are; the quantity as a delta, so sales
+            // recorded elsewhere meanwhile are not overwritten
+            enqueueOutbox(conn, productId, OUTBOX_UPDATE);
+            if (quantity != oldQuantity) {
+                enqueueOutbox(conn, productId, OUTBOX_ADJUST, quantity - oldQuantity);
+            }
+            setMovementContext(conn, null, null);
+            conn.commit();
+        }
+        return true;
+    }
+    
+    // Write a product's fields; with expectedQuantity set, only if its quantity still is that
+    private static boolean writeProduct(Connection conn, String productId, Integer expectedQuantity, String name, String category,
+                                        int quantity, double price, Integer lowStockThreshold) throws SQLException {
+        String sql = "UPDATE products SET name = ?, category = ?, quantity = ?, price = ?, low_stock_threshold = COALESCE(?, low_stock_threshold) WHERE id = ?"
+            + (expectedQuantity != null ? " AND quantity = ?" : "");
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             pstmt.setString(2, category);
             pstmt.setInt(3, quantity);
@@ -235,46 +677,245 @@ public class LocalDbService {
                 pstmt.setNull(5, java.sql.Types.INTEGER);
             }
             pstmt.setString(6, productId);
-            pstmt.executeUpdate();
+            if (expectedQuantity != null) {
+                pstmt.setInt(7, expectedQuantity);
+            }
+            return pstmt.executeUpdate() > 0;
         }
     }
     
     // Delete product
     public static void deleteProduct(String productId) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM products WHERE id = ?")) {
+        deleteProduct(productId, null);
+    }
+    
+    // Delete product; its remaining stock is written off as a movement by userId
+    public static void deleteProduct(String productId, String userId) throws SQLException {
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            setMovementContext(conn, StockMovement.REASON_DELETE, userId);
+            
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM products WHERE id = ?")) {
+                pstmt.setString(1, productId);
+                if (pstmt.executeUpdate() == 0) {
+                    return;
+                }
+            }
+            
+            enqueueOutbox(conn, productId, OUTBOX_DELETE);
+            setMovementContext(conn, null, null);
+            conn.commit();
+        }
+    }
+    
+    // Stock movements with from <= created_at < to (epoch seconds), newest first;
+    // a null productId covers every product
+    public static List<StockMovement> getStockMovements(String productId, long from, long to, int limit) throws SQLException {
+        List<StockMovement> movements = new ArrayList<>();
+        String sql = "SELECT * FROM stock_movements WHERE "
+            + (productId != null ? "product_id = ? AND " : "")
+            + "created_at >= ? AND created_at < ? ORDER BY created_at DESC, id DESC LIMIT ?";
+        
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            int i = 1;
+            if (productId != null) {
+                pstmt.setString(i++, productId);
+            }
+            pstmt.setLong(i++, from);
+            pstmt.setLong(i++, to);
+            pstmt.setInt(i, limit);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    movements.add(new StockMovement(
+                        rs.getLong("id"),
+                        rs.getString("product_id"),
+                        rs.getInt("delta"),
+                        rs.getString("reason"),
+                        rs.getString("user_id"),
+                        rs.getLong("created_at")
+                    ));
+                }
+            }
+        }
+        
+        return movements;
+    }
+    
+    // Quantity a product had at the given time (epoch seconds), summed from its ledger
+    public static int getQuantityAt(String productId, long at) throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT COALESCE(SUM(delta), 0) FROM stock_movements WHERE product_id = ? AND created_at <= ?")) {
             
             pstmt.setString(1, productId);
-            pstmt.executeUpdate();
+            pstmt.setLong(2, at);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+    
+    // Add delta to a product's quantity in one statement, so concurrent
+    // adjustments all land. Returns the updated product, or null if it does
+    // not exist or the result would go below zero.
+    public static ProductRecord incrementQuantity(String productId, int delta, String reason, String userId) throws SQLException {
+        ProductRecord product;
+        
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            setMovementContext(conn, reason, userId);
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(INCREMENT_QUANTITY_SQL)) {
+                product = incrementQuantity(pstmt, productId, delta);
+            }
+            if (product == null) {
+                return null;
+            }
+            
+            enqueueOutbox(conn, productId, OUTBOX_ADJUST, delta);
+            setMovementContext(conn, null, null);
+            conn.commit();
+        }
+        
+        return product;
+    }
+    
+    // Sell several products in one transaction: every line's stock is taken
+    // or, if any product is missing or short, none is. Lines for the same
+    // product are combined. Returns the updated products.
+    public static List<ProductRecord> checkout(List<CheckoutLine> lines, String userId) throws SQLException {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CheckoutLine line : lines) {
+            if (line.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive: " + line);
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        
+        List<ProductRecord> products = new ArrayList<>(quantities.size());
+        
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            setMovementContext(conn, StockMovement.REASON_SALE, userId);
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(INCREMENT_QUANTITY_SQL)) {
+                for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                    ProductRecord product = incrementQuantity(pstmt, entry.getKey(), -entry.getValue());
+                    if (product == null) {
+                        // Returning the connection to the pool rolls back the lines already applied
+                        throw new InsufficientStockException(entry.getKey(), entry.getValue());
+                    }
+                    products.add(product);
+                }
+            }
+            
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                enqueueOutbox(conn, entry.getKey(), OUTBOX_ADJUST, -entry.getValue());
+            }
+            setMovementContext(conn, null, null);
+            conn.commit();
+        }
+        
+        return products;
+    }
+    
+    // Relative quantity change that refuses to go below zero; no row means it was refused
+    private static ProductRecord incrementQuantity(PreparedStatement pstmt, String productId, int delta) throws SQLException {
+        pstmt.setInt(1, delta);
+        pstmt.setString(2, productId);
+        pstmt.setInt(3, delta);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? mapProduct(rs) : null;
         }
     }
     
     // Get product by ID
-    public static Product getProductById(String productId) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+    public static ProductRecord getProductById(String productId) throws SQLException {
+        try (Connection conn = pool.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM products WHERE id = ?")) {
             
             pstmt.setString(1, productId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return new Product(
-                    rs.getString("id"),
-                    rs.getString("name"),
-                    rs.getString("category"),
-                    rs.getInt("quantity"),
-                    rs.getDouble("price"),
-                    rs.getInt("low_stock_threshold")
-                );
+                return mapProduct(rs);
             }
         }
         
         return null;
     }
     
+    // Ranked full-text search over name and category (name matches weigh more);
+    // every word is matched as a prefix. A blank query pages through all products by name.
+    public static List<ProductRecord> searchProducts(String query, int limit, int offset) throws SQLException {
+        String match = toMatchExpression(query);
+        List<ProductRecord> products = new ArrayList<>();
+        
+        String sql = match == null
+            ? "SELECT * FROM products ORDER BY name LIMIT ? OFFSET ?"
+            : """
+              SELECT p.* FROM products_fts f
+              JOIN products p ON p.rowid = f.rowid
+              WHERE products_fts MATCH ?
+              ORDER BY bm25(products_fts, 10.0, 2.0), p.name
+              LIMIT ? OFFSET ?
+              """;
+        
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            int i = 1;
+            if (match != null) {
+                pstmt.setString(i++, match);
+            }
+            pstmt.setInt(i++, limit);
+            pstmt.setInt(i, offset);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                products.add(mapProduct(rs));
+            }
+        }
+        
+        return products;
+    }
+    
+    // Quote each word so user input can't inject FTS5 syntax
+    private static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        
+        StringBuilder match = new StringBuilder();
+        for (String token : query.trim().split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(" AND ");
+            }
+            match.append('"').append(token).append("\"*");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+    
+    private static ProductRecord mapProduct(ResultSet rs) throws SQLException {
+        return new ProductRecord(
+            rs.getString("id"),
+            rs.getString("name"),
+            rs.getString("category"),
+            rs.getInt("quantity"),
+            rs.getDouble("price"),
+            rs.getInt("low_stock_threshold")
+        );
+    }
+    
     // Update user password
     public static void updateUserPassword(String userId, String newPassword) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET password = ? WHERE id = ?")) {
             
             pstmt.setString(1, newPassword);
@@ -285,7 +926,7 @@ public class LocalDbService {
     
     // Update user role
     public static void updateUserRole(String userId, String newRole) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET role = ? WHERE id = ?")) {
             
             pstmt.setString(1, newRole);
@@ -296,7 +937,7 @@ public class LocalDbService {
     
     // Delete user
     public static void deleteUser(String userId) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
             
             pstmt.setString(1, userId);
@@ -306,7 +947,7 @@ public class LocalDbService {
     
     // Get last sync time
     public static long getLastSync(String key) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                  "SELECT last_sync FROM sync_metadata WHERE key = ?")) {
             
@@ -320,8 +961,36 @@ public class LocalDbService {
         return 0;
     }
     
+    // Get a stored sync value (watermarks, validators), or null if never set
+    public static String getSyncValue(String key) throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT value FROM sync_metadata WHERE key = ?")) {
+            
+            pstmt.setString(1, key);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                return rs.getString("value");
+            }
+        }
+        return null;
+    }
+    
+    // Store a sync value; joins the caller's transaction if it holds the writer
+    public static void setSyncValue(String key, String value) throws SQLException {
+        try (Connection conn = pool.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT OR REPLACE INTO sync_metadata (key, value, last_sync) VALUES (?, ?, strftime('%s','now'))")) {
+            
+            pstmt.setString(1, key);
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+    
     private static void updateLastSync(String key) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = pool.getWriteConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                  "INSERT OR REPLACE INTO sync_metadata (key, value, last_sync) VALUES (?, ?, strftime('%s','now'))")) {
             
@@ -330,4 +999,205 @@ public class LocalDbService {
             pstmt.executeUpdate();
         }
     }
+    
+    // Record a product mutation for replay; runs in the caller's transaction
+    private static void enqueueOutbox(Connection conn, String productId, String op) throws SQLException {
+        enqueueOutbox(conn, productId, op, null);
+    }
+    
+    private static void enqueueOutbox(Connection conn, String productId, String op, Integer delta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO outbox (product_id, op, delta) VALUES (?, ?, ?)")) {
+            
+            pstmt.setString(1, productId);
+            pstmt.setString(2, op);
+            if (delta != null) {
+                pstmt.setInt(3, delta);
+            } else {
+                pstmt.setNull(3, java.sql.Types.INTEGER);
+            }
+            pstmt.executeUpdate();
+        }
+    }
+    
+    // Oldest outbox entries due for sending, in the order they were recorded. A
+    // product with a parked or backing-off entry is skipped entirely so its
+    // changes are never sent out of order.
+    public static List<OutboxEntry> getPendingOutbox(int limit) throws SQLException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        
+        try (Connection conn = pool.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT seq, product_id, op, delta, created_at, attempts FROM outbox "
+                 + "WHERE product_id NOT IN (SELECT product_id FROM outbox "
+                 + "WHERE parked = 1 OR next_attempt_at > strftime('%s','now')) "
+                 + "ORDER BY seq LIMIT ?")) {
+            
+            pstmt.setInt(1, limit);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                entries.add(new OutboxEntry(
+                    rs.getLong("seq"),
+                    rs.getString("product_id"),
+                    rs.getString("op"),
+                    rs.getInt("delta"),
+                    rs.getLong("created_at"),
+                    rs.getInt("attempts")
+                ));
+            }
+        }
+        
+        return entries;
+    }
+    
+    // Ids of products with local changes the server has not acknowledged yet.
+    // Parked changes are left out: the server rejected them, so its copy wins.
+    public static Set<String> getPendingOutboxProductIds() throws SQLException {
+        Set<String> ids = new HashSet<>();
+        
+        try (Connection conn = pool.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT product_id FROM outbox WHERE parked = 0")) {
+            
+            while (rs.next()) {
+                ids.add(rs.getString("product_id"));
+            }
+        }
+        
+        return ids;
+    }
+    
+    public static int countPendingOutbox() throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM outbox")) {
+            
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    // Drop entries the server has applied; later edits to the same product stay queued
+    public static void completeOutbox(String productId, long upToSeq) throws SQLException {
+        try (Connection conn = pool.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "DELETE FROM outbox WHERE product_id = ? AND seq <= ?")) {
+            
+            pstmt.setString(1, productId);
+            pstmt.setLong(2, upToSeq);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    // A product's adjust entries up to upToSeq as fixed ranges, oldest first.
+    // Entries not sent before are stamped with upToSeq as their range end, so a
+    // resend after a lost response carries exactly the same entries and key
+    // even if more adjustments were recorded meanwhile.
+    public static List<OutboxAdjustment> claimOutboxAdjustments(String productId, long upToSeq) throws SQLException {
+        List<OutboxAdjustment> ranges = new ArrayList<>();
+        
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "UPDATE outbox SET range_end = ? WHERE product_id = ? AND op = ? AND range_end IS NULL AND seq <= ?")) {
+                pstmt.setLong(1, upToSeq);
+                pstmt.setString(2, productId);
+                pstmt.setString(3, OUTBOX_ADJUST);
+                pstmt.setLong(4, upToSeq);
+                pstmt.executeUpdate();
+            }
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT MIN(seq), range_end, TOTAL(delta) FROM outbox "
+                     + "WHERE product_id = ? AND op = ? AND range_end IS NOT NULL "
+                     + "GROUP BY range_end ORDER BY range_end")) {
+                pstmt.setString(1, productId);
+                pstmt.setString(2, OUTBOX_ADJUST);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ranges.add(new OutboxAdjustment(productId, rs.getLong(1), rs.getLong(2), rs.getInt(3)));
+                    }
+                }
+            }
+            
+            conn.commit();
+        }
+        
+        return ranges;
+    }
+    
+    // Count a rejected attempt and back the entries off; returns true once they are parked
+    public static boolean markOutboxFailed(String productId, long upToSeq, String error) throws SQLException {
+        try (Connection conn = pool.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE outbox SET attempts = attempts + 1, last_error = ?, "
+                 + "next_attempt_at = strftime('%s','now') + ? * (1 << attempts), "
+                 + "parked = attempts + 1 >= ? "
+                 + "WHERE product_id = ? AND seq <= ? RETURNING parked")) {
+            
+            pstmt.setString(1, error);
+            pstmt.setLong(2, Config.OUTBOX_RETRY_BASE_SECONDS);
+            pstmt.setInt(3, Config.OUTBOX_MAX_ATTEMPTS);
+            pstmt.setString(4, productId);
+            pstmt.setLong(5, upToSeq);
+            
+            boolean parked = false;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    parked |= rs.getInt(1) != 0;
+                }
+            }
+            return parked;
+        }
+    }
+    
+    // Give parked entries a fresh set of attempts; returns how many were parked
+    public static int retryParkedOutbox() throws SQLException {
+        try (Connection conn = pool.getWriteConnection();
+             Statement stmt = conn.createStatement()) {
+            
+            return stmt.executeUpdate("UPDATE outbox SET parked = 0, attempts = 0, next_attempt_at = 0 WHERE parked = 1");
+        }
+    }
+    
+    // Pool health and size metrics
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+    
+    public static boolean isHealthy() {
+        return pool.isHealthy();
+    }
+    
+    // Checkpoint the WAL and close pooled connections on application exit
+    public static void shutdown() {
+        checkpointScheduler.stop();
+        pool.close();
+    }
+    
+    /**
+     * A checkout line asked for more than is in stock, or for a product that
+     * no longer exists; the whole checkout was rolled back.
+     */
+    public static class InsufficientStockException extends SQLException {
+        private static final long serialVersionUID = 1L;
+        
+        private final String productId;
+        private final int requested;
+        
+        public InsufficientStockException(String productId, int requested) {
+            super("Not enough stock for product " + productId + " (requested " + requested + ")");
+            this.productId = productId;
+            this.requested = requested;
+        }
+        
+        public String getProductId() {
+            return productId;
+        }
+        
+        public int getRequested() {
+            return requested;
+        }
+    }
 }
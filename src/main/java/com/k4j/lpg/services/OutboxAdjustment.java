@@ -0,0 +1,46 @@
+package com.k4j.lpg.services;
+
+/**
+ * A fixed range of one product's 'adjust' outbox entries, sent as a single
+ * delta. The range is stamped before it is first sent, so every resend
+ * carries the same entries, delta and idempotency key.
+ */
+public class OutboxAdjustment {
+    
+    private final String productId;
+    private final long firstSeq;
+    private final long lastSeq;
+    private final int delta;
+    
+    public OutboxAdjustment(String productId, long firstSeq, long lastSeq, int delta) {
+        this.productId = productId;
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+        this.delta = delta;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    public long getFirstSeq() {
+        return firstSeq;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public int getDelta() {
+        return delta;
+    }
+    
+    @Override
+    public String toString() {
+        return "OutboxAdjustment{" +
+                "productId='" + productId + '\'' +
+                ", seq=" + firstSeq + ".." + lastSeq +
+                ", delta=" + delta +
+                '}';
+    }
+}
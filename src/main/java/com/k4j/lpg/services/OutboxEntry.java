@@ -0,0 +1,59 @@
+package com.k4j.lpg.services;
+
+/**
+ * One recorded product mutation waiting to be pushed to the server.
+ */
+public class OutboxEntry {
+    
+    private final long seq;
+    private final String productId;
+    private final String op;
+    // Quantity change of an 'adjust' entry, 0 for other ops
+    private final int delta;
+    private final long createdAt;
+    private final int attempts;
+    
+    public OutboxEntry(long seq, String productId, String op, int delta, long createdAt, int attempts) {
+        this.seq = seq;
+        this.productId = productId;
+        this.op = op;
+        this.delta = delta;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public String getProductId() {
+        return productId;
+    }
+    
+    public String getOp() {
+        return op;
+    }
+    
+    public int getDelta() {
+        return delta;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    @Override
+    public String toString() {
+        return "OutboxEntry{" +
+                "seq=" + seq +
+                ", productId='" + productId + '\'' +
+                ", op='" + op + '\'' +
+                ", delta=" + delta +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
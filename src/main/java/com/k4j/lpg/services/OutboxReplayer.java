@@ -0,0 +1,406 @@
+package com.k4j.lpg.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.k4j.lpg.models.ProductRecord;
+import com.k4j.lpg.utils.Config;
+import com.k4j.lpg.utils.NetworkChecker;
+import com.k4j.lpg.utils.SessionManager;
+import com.k4j.lpg.utils.SharedHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes locally recorded product mutations (the outbox) to the server.
+ *
+ * Pending entries are read oldest first and coalesced per product id: any
+ * mix of creates and updates becomes one upsert carrying the row's fields as
+ * they are now, a trailing delete wins, and a product created and deleted
+ * while offline is dropped without a request. The quantity is never part of
+ * the upsert: every quantity change, including opening stock and edits, is
+ * recorded as an 'adjust' delta that the server adds to its own quantity, so
+ * stock changes made on several machines all count. Adjust entries are sent
+ * in ranges fixed before the first send (see
+ * {@link LocalDbService#claimOutboxAdjustments}), each keyed by install id
+ * plus first and last seq, so a resend after a lost response is not applied
+ * twice. Each batch is one POST to /products/batch; a product's entries are
+ * removed only once the server accepts all of its operations, and only up to
+ * the seq that was sent, so edits made while a replay is in flight are kept
+ * for the next one.
+ *
+ * A change the server rejects (or does not answer) is backed off
+ * exponentially and, after Config.OUTBOX_MAX_ATTEMPTS, parked: it stays in
+ * the outbox with its last error but is not resent until the next launch.
+ * Either way the rest of the queue keeps draining. A request that fails as
+ * a whole (a non-2xx status) counts as an attempt for every product in it
+ * and ends the run, so a server that keeps failing does not hold the queue
+ * for ever.
+ *
+ * The batch endpoint needs a server-issued access token. A session signed in
+ * locally has none, so the replay is skipped and {@link #getBlockedReason()}
+ * says why until a replay can run again.
+ *
+ * Replays run one at a time on a dedicated thread and are triggered when the
+ * network comes back, after local mutations and before every product sync.
+ */
+public class OutboxReplayer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(OutboxReplayer.class);
+    private static final Gson gson = new Gson();
+    private static final HttpClient httpClient = SharedHttpClient.get();
+    
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "k4j-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    // A replay that has been submitted but not started yet; new requests join it
+    private static final AtomicReference<CompletableFuture<ReplayResult>> queued = new AtomicReference<>();
+    
+    static final String CLIENT_ID_KEY = "client_id";
+    private static volatile String clientId;
+    
+    // Why the last replay could not send anything, or null
+    private static volatile String blockedReason;
+    
+    private OutboxReplayer() {
+        // Static utility
+    }
+    
+    /**
+     * Replay whenever connectivity is restored.
+     */
+    public static void start() {
+        try {
+            int parked = LocalDbService.retryParkedOutbox();
+            if (parked > 0) {
+                logger.info("Retrying " + parked + " parked outbox entries");
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not requeue parked outbox entries: " + e.getMessage());
+        }
+        NetworkChecker.addListener(online -> {
+            if (online) {
+                replayAsync();
+            }
+        });
+    }
+    
+    /**
+     * Replay now if the server is reachable; otherwise the entries wait for
+     * the next online transition.
+     */
+    public static void requestReplay() {
+        if (NetworkChecker.isOnline()) {
+            replayAsync();
+        }
+    }
+    
+    public static CompletableFuture<ReplayResult> replayAsync() {
+        CompletableFuture<ReplayResult> future = new CompletableFuture<>();
+        CompletableFuture<ReplayResult> existing = queued.compareAndExchange(null, future);
+        if (existing != null) {
+            return existing;
+        }
+        
+        try {
+            executor.execute(() -> {
+                queued.compareAndSet(future, null);
+                try {
+                    future.complete(replay());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            queued.compareAndSet(future, null);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Why queued changes cannot be uploaded in this session, or null if nothing blocks them.
+     */
+    public static String getBlockedReason() {
+        return blockedReason;
+    }
+    
+    private static ReplayResult replay() throws IOException, InterruptedException, SQLException {
+        if (!SessionManager.getInstance().hasServerToken()) {
+            int remaining = LocalDbService.countPendingOutbox();
+            if (remaining > 0) {
+                logger.warn("Outbox replay skipped: no server-issued access token, " + remaining + " entries pending");
+                blockedReason = remaining + " offline change(s) could not be uploaded because this session was "
+                    + "signed in offline. They are kept and will upload after signing in to the server.";
+            }
+            return new ReplayResult(0, 0, 0, 0, remaining);
+        }
+        blockedReason = null;
+        
+        int entries = 0;
+        int sent = 0;
+        int failed = 0;
+        int parked = 0;
+        
+        while (true) {
+            List<OutboxEntry> pending = LocalDbService.getPendingOutbox(Config.OUTBOX_BATCH_SIZE);
+            if (pending.isEmpty()) {
+                break;
+            }
+            entries += pending.size();
+            
+            // Coalesce to one operation per product, keeping the last seq seen
+            Map<String, Coalesced> byProduct = new LinkedHashMap<>();
+            for (OutboxEntry entry : pending) {
+                byProduct.computeIfAbsent(entry.getProductId(), id -> new Coalesced(entry.getOp())).add(entry);
+            }
+            
+            // Results come back in request order, so remember whose each operation is
+            JsonArray operations = new JsonArray();
+            List<String> operationProducts = new ArrayList<>();
+            Map<String, Long> sentUpTo = new LinkedHashMap<>();
+            for (Map.Entry<String, Coalesced> e : byProduct.entrySet()) {
+                String productId = e.getKey();
+                Coalesced c = e.getValue();
+                List<JsonObject> productOperations = toOperations(productId, c);
+                if (productOperations.isEmpty()) {
+                    // Created and deleted, or adjusted back to where it was: nothing to send
+                    LocalDbService.completeOutbox(productId, c.completeUpTo);
+                    continue;
+                }
+                for (JsonObject operation : productOperations) {
+                    operations.add(operation);
+                    operationProducts.add(productId);
+                }
+                sentUpTo.put(productId, c.completeUpTo);
+            }
+            
+            if (operations.isEmpty()) {
+                continue;
+            }
+            
+            JsonObject body = new JsonObject();
+            body.add("operations", operations);
+            HttpResponse<String> response = HttpPolicy.send(httpClient, buildRequest(body),
+                HttpResponse.BodyHandlers.ofString(), HttpPolicy.Endpoint.OUTBOX_REPLAY);
+            
+            if (response.statusCode() != 200) {
+                // Back off every product in the batch and leave the rest for a later run
+                logger.warn("Outbox replay failed with HTTP " + response.statusCode());
+                for (Map.Entry<String, Long> e : sentUpTo.entrySet()) {
+                    failed++;
+                    if (LocalDbService.markOutboxFailed(e.getKey(), e.getValue(), "HTTP " + response.statusCode())) {
+                        parked++;
+                    }
+                }
+                break;
+            }
+            
+            // A product is done only if every one of its operations was applied
+            Map<String, String> errors = new LinkedHashMap<>();
+            JsonArray results = gson.fromJson(response.body(), JsonObject.class).getAsJsonArray("results");
+            for (int i = 0; i < operationProducts.size(); i++) {
+                String productId = operationProducts.get(i);
+                JsonObject result = results != null && i < results.size() ? results.get(i).getAsJsonObject() : null;
+                if (result == null) {
+                    errors.putIfAbsent(productId, "No result from server");
+                } else if (!result.get("success").getAsBoolean()) {
+                    errors.putIfAbsent(productId, result.has("error") ? result.get("error").getAsString() : "rejected");
+                }
+            }
+            
+            for (Map.Entry<String, Long> e : sentUpTo.entrySet()) {
+                String productId = e.getKey();
+                String error = errors.get(productId);
+                if (error == null) {
+                    LocalDbService.completeOutbox(productId, e.getValue());
+                    sent++;
+                } else {
+                    logger.warn("Server rejected outbox change for product " + productId + ": " + error);
+                    failed++;
+                    if (LocalDbService.markOutboxFailed(productId, e.getValue(), error)) {
+                        parked++;
+                    }
+                }
+            }
+            // Failed products are now backing off or parked, so the next batch skips them
+        }
+        
+        if (parked > 0) {
+            logger.warn("Parked outbox changes for " + parked + " product(s) after "
+                + Config.OUTBOX_MAX_ATTEMPTS + " attempts");
+        }
+        ReplayResult result = new ReplayResult(entries, sent, failed, parked, LocalDbService.countPendingOutbox());
+        if (entries > 0) {
+            logger.info("Outbox replay complete: " + result);
+        }
+        return result;
+    }
+    
+    // The product's operations in the order the server must apply them: the
+    // upsert (which may create it) before its quantity adjustments
+    private static List<JsonObject> toOperations(String productId, Coalesced c) throws SQLException {
+        List<JsonObject> operations = new ArrayList<>();
+        ProductRecord product = LocalDbService.OUTBOX_DELETE.equals(c.lastOp) ? null : LocalDbService.getProductById(productId);
+        
+        if (product == null) {
+            // Adjustments of a product that is gone no longer matter
+            if (!LocalDbService.OUTBOX_CREATE.equals(c.firstOp)) {
+                JsonObject operation = new JsonObject();
+                operation.addProperty("op", "delete");
+                operation.addProperty("id", productId);
+                operations.add(operation);
+            }
+            return operations;
+        }
+        
+        if (!c.adjustOnly) {
+            JsonObject productJson = new JsonObject();
+            productJson.addProperty("id", product.getId());
+            productJson.addProperty("name", product.getName());
+            productJson.addProperty("category", product.getCategory());
+            productJson.addProperty("price", product.getPrice());
+            productJson.addProperty("low_stock_threshold", product.getLowStockThreshold());
+            
+            JsonObject operation = new JsonObject();
+            operation.addProperty("op", "upsert");
+            operation.add("product", productJson);
+            operations.add(operation);
+        }
+        
+        for (OutboxAdjustment adjustment : LocalDbService.claimOutboxAdjustments(productId, c.lastSeq)) {
+            // A range stamped by an earlier, larger batch may end past this one
+            c.completeUpTo = Math.max(c.completeUpTo, adjustment.getLastSeq());
+            if (adjustment.getDelta() == 0) {
+                continue;
+            }
+            JsonObject operation = new JsonObject();
+            operation.addProperty("op", "adjust");
+            operation.addProperty("id", productId);
+            operation.addProperty("delta", adjustment.getDelta());
+            operation.addProperty("key", getClientId() + ":" + adjustment.getFirstSeq() + "-" + adjustment.getLastSeq());
+            operations.add(operation);
+        }
+        return operations;
+    }
+    
+    private static HttpRequest buildRequest(JsonObject body) {
+        String token = SessionManager.getInstance().getAccessToken();
+        return HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/products/batch"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
+                .build();
+    }
+    
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    // Random per-install id, created on first use and kept in sync_metadata
+    private static String getClientId() throws SQLException {
+        String id = clientId;
+        if (id == null) {
+            id = LocalDbService.getSyncValue(CLIENT_ID_KEY);
+            if (id == null) {
+                id = java.util.UUID.randomUUID().toString();
+                LocalDbService.setSyncValue(CLIENT_ID_KEY, id);
+            }
+            clientId = id;
+        }
+        return id;
+    }
+    
+    private static class Coalesced {
+        private final String firstOp;
+        private String lastOp;
+        private long lastSeq;
+        private long completeUpTo;
+        private boolean adjustOnly = true;
+        
+        Coalesced(String firstOp) {
+            this.firstOp = firstOp;
+        }
+        
+        void add(OutboxEntry entry) {
+            lastOp = entry.getOp();
+            lastSeq = entry.getSeq();
+            completeUpTo = lastSeq;
+            if (!LocalDbService.OUTBOX_ADJUST.equals(entry.getOp())) {
+                adjustOnly = false;
+            }
+        }
+    }
+    
+    /**
+     * Outcome of one replay run
+     */
+    public static class ReplayResult {
+        private final int entries;
+        private final int sent;
+        private final int failed;
+        private final int parked;
+        private final int remaining;
+        
+        public ReplayResult(int entries, int sent, int failed, int parked, int remaining) {
+            this.entries = entries;
+            this.sent = sent;
+            this.failed = failed;
+            this.parked = parked;
+            this.remaining = remaining;
+        }
+        
+        public int getEntries() {
+            return entries;
+        }
+        
+        public int getSent() {
+            return sent;
+        }
+        
+        public int getFailed() {
+            return failed;
+        }
+        
+        /**
+         * Products whose changes ran out of attempts during this run
+         */
+        public int getParked() {
+            return parked;
+        }
+        
+        public int getRemaining() {
+            return remaining;
+        }
+        
+        @Override
+        public String toString() {
+            return "ReplayResult{" +
+                    "entries=" + entries +
+                    ", sent=" + sent +
+                    ", failed=" + failed +
+                    ", parked=" + parked +
+                    ", remaining=" + remaining +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.models.ProductRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Batched, single-transaction writer for the products table.
+ *
+ * Rows are upserted with addBatch/executeBatch in fixed-size chunks inside one
+ * write transaction, so a large sync costs one commit instead of one fsync per
+ * row. In full-refresh mode every id written is remembered in a temp table and
+ * rows that were not part of the refresh are deleted just before commit.
+ * Readers on other connections keep seeing the previous snapshot until the
+ * commit, so the table is never observed half-empty.
+ *
+ * Usage:
+ * <pre>
+ * try (ProductBulkWriter writer = LocalDbService.openProductWriter(true)) {
+ *     for (ProductRecord p : products) {
+ *         writer.upsert(p);
+ *     }
+ *     writer.commit();
+ * }
+ * </pre>
+ * Closing a writer that was not committed rolls the transaction back.
+ */
+public class ProductBulkWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductBulkWriter.class);
+
+    // Unchanged rows are skipped so last_updated only moves when something changed
+    private static final String UPSERT_SQL = """
+        INSERT INTO products (id, name, category, quantity, price, low_stock_threshold, last_updated)
+        VALUES (?, ?, ?, ?, ?, ?, strftime('%s','now'))
+        ON CONFLICT(id) DO UPDATE SET
+            name = excluded.name,
+            category = excluded.category,
+            quantity = excluded.quantity,
+            price = excluded.price,
+            low_stock_threshold = excluded.low_stock_threshold,
+            last_updated = excluded.last_updated
+        WHERE products.name IS NOT excluded.name
+           OR products.category IS NOT excluded.category
+           OR products.quantity IS NOT excluded.quantity
+           OR products.price IS NOT excluded.price
+           OR products.low_stock_threshold IS NOT excluded.low_stock_threshold
+        """;
+
+    private final Connection conn;
+    private final boolean fullRefresh;
+    private final int batchSize;
+
+    private final PreparedStatement upsertStmt;
+    private final PreparedStatement deleteStmt;
+    private final PreparedStatement seenStmt;
+
+    private int pendingUpserts;
+    private int pendingRetains;
+    private int pendingDeletes;
+    private int upserted;
+    private int deleted;
+    private boolean committed;
+    private final long startNanos = System.nanoTime();
+
+    ProductBulkWriter(Connection conn, boolean fullRefresh, int batchSize) throws SQLException {
+        this.conn = conn;
+        this.fullRefresh = fullRefresh;
+        this.batchSize = Math.max(1, batchSize);
+
+        try {
+            conn.setAutoCommit(false);
+
+            if (fullRefresh) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TEMP TABLE IF NOT EXISTS sync_seen (id TEXT PRIMARY KEY)");
+                    stmt.execute("DELETE FROM temp.sync_seen");
+                }
+                seenStmt = conn.prepareStatement("INSERT OR IGNORE INTO temp.sync_seen (id) VALUES (?)");
+            } else {
+                seenStmt = null;
+            }
+            upsertStmt = conn.prepareStatement(UPSERT_SQL);
+            deleteStmt = conn.prepareStatement("DELETE FROM products WHERE id = ?");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Queue an insert-or-update for one product.
+     */
+    public void upsert(ProductRecord p) throws SQLException {
+        upsertStmt.setString(1, p.getId());
+        upsertStmt.setString(2, p.getName());
+        upsertStmt.setString(3, p.getCategory());
+        upsertStmt.setInt(4, p.getQuantity());
+        upsertStmt.setDouble(5, p.getPrice());
+        upsertStmt.setInt(6, p.getLowStockThreshold());
+        upsertStmt.addBatch();
+
+        if (seenStmt != null) {
+            seenStmt.setString(1, p.getId());
+            seenStmt.addBatch();
+        }
+
+        if (++pendingUpserts >= batchSize) {
+            flushUpserts();
+        }
+    }
+
+    /**
+     * Queue a delete for one product id.
+     */
+    public void delete(String productId) throws SQLException {
+        deleteStmt.setString(1, productId);
+        deleteStmt.addBatch();
+
+        if (++pendingDeletes >= batchSize) {
+            flushDeletes();
+        }
+    }
+
+    /**
+     * Keep a row as it is locally. In full-refresh mode this stops the row
+     * from being deleted for missing from the refresh; otherwise a no-op.
+     */
+    public void retain(String productId) throws SQLException {
+        if (seenStmt != null) {
+            seenStmt.setString(1, productId);
+            seenStmt.addBatch();
+            if (++pendingRetains >= batchSize) {
+                flushUpserts();
+            }
+        }
+    }
+
+    private void flushUpserts() throws SQLException {
+        if (pendingUpserts == 0 && pendingRetains == 0) {
+            return;
+        }
+        upsertStmt.executeBatch();
+        if (seenStmt != null) {
+            seenStmt.executeBatch();
+        }
+        upserted += pendingUpserts;
+        pendingUpserts = 0;
+        pendingRetains = 0;
+    }
+
+    private void flushDeletes() throws SQLException {
+        if (pendingDeletes == 0) {
+            return;
+        }
+        for (int count : deleteStmt.executeBatch()) {
+            deleted += Math.max(count, 0);
+        }
+        pendingDeletes = 0;
+    }
+
+    /**
+     * Flush remaining batches, drop rows missing from a full refresh and commit.
+     * Returns the number of rows written (upserted plus deleted).
+     */
+    public int commit() throws SQLException {
+        flushUpserts();
+        flushDeletes();
+
+        if (fullRefresh) {
+            try (Statement stmt = conn.createStatement()) {
+                deleted += stmt.executeUpdate("DELETE FROM products WHERE id NOT IN (SELECT id FROM temp.sync_seen)");
+                stmt.execute("DELETE FROM temp.sync_seen");
+            }
+        }
+
+        conn.commit();
+        committed = true;
+
+        long elapsedMicros = Math.max(1, (System.nanoTime() - startNanos) / 1000);
+        logger.info(String.format("Bulk product write: %d upserted, %d deleted in %.1f ms (%.1f rows/ms)",
+            upserted, deleted, elapsedMicros / 1000.0, upserted * 1000.0 / elapsedMicros));
+        return upserted + deleted;
+    }
+
+    public int getUpsertedCount() {
+        return upserted;
+    }
+
+    public int getDeletedCount() {
+        return deleted;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!committed) {
+                conn.rollback();
+            }
+        } finally {
+            try {
+                if (seenStmt != null) {
+                    seenStmt.close();
+                }
+                upsertStmt.close();
+                deleteStmt.close();
+                conn.setAutoCommit(true);
+            } finally {
+                conn.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.k4j.lpg.services;
+
+/**
+ * Catalogue-wide product counts computed in SQL.
+ */
+public class ProductCounts {
+    
+    private final int total;
+    private final int lowStock;
+    private final int outOfStock;
+    private final double stockValue;
+    
+    public ProductCounts(int total, int lowStock, int outOfStock, double stockValue) {
+        this.total = total;
+        this.lowStock = lowStock;
+        this.outOfStock = outOfStock;
+        this.stockValue = stockValue;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public int getLowStock() {
+        return lowStock;
+    }
+    
+    public int getOutOfStock() {
+        return outOfStock;
+    }
+    
+    /**
+     * Sum of quantity times price.
+     */
+    public double getStockValue() {
+        return stockValue;
+    }
+    
+    @Override
+    public String toString() {
+        return "ProductCounts{" +
+                "total=" + total +
+                ", lowStock=" + lowStock +
+                ", outOfStock=" + outOfStock +
+                String.format(", stockValue=%.2f", stockValue) +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.models.ProductRecord;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated product query plus the cursor for the next.
+ */
+public class ProductPage {
+
+    private final List<ProductRecord> products;
+    private final Cursor next;
+
+    public ProductPage(List<ProductRecord> products, Cursor next) {
+        this.products = products;
+        this.next = next;
+    }
+
+    public List<ProductRecord> getProducts() {
+        return products;
+    }
+
+    /**
+     * Cursor for the following page, or null if this was the last one.
+     */
+    public Cursor getNext() {
+        return next;
+    }
+
+    public boolean hasMore() {
+        return next != null;
+    }
+
+    /**
+     * Position in a sorted product listing: the sort key value and id of the
+     * last row already returned (both null before the first page).
+     */
+    public static class Cursor {
+        private final ProductSort sort;
+        private final boolean descending;
+        private final Object lastValue;
+        private final String lastId;
+
+        public Cursor(ProductSort sort, boolean descending, Object lastValue, String lastId) {
+            this.sort = sort;
+            this.descending = descending;
+            this.lastValue = lastValue;
+            this.lastId = lastId;
+        }
+
+        public static Cursor first(ProductSort sort, boolean descending) {
+            return new Cursor(sort, descending, null, null);
+        }
+
+        public ProductSort getSort() {
+            return sort;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        public Object getLastValue() {
+            return lastValue;
+        }
+
+        public String getLastId() {
+            return lastId;
+        }
+
+        public boolean isFirst() {
+            return lastId == null;
+        }
+    }
+}
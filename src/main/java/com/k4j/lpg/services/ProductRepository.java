@@ -0,0 +1,192 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.models.CheckoutLine;
+import com.k4j.lpg.models.ProductRecord;
+import com.k4j.lpg.utils.Config;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-through cache of single products by id.
+ *
+ * Lists and pages are read from SQLite by keyset (see
+ * LocalDbService.getProductsPage), so the whole table is never held here:
+ * a product is cached the first time it is looked up or written, and every
+ * later lookup of it (the read before an update, a stock check after a
+ * failed sale) is answered from memory. Writes go to SQLite first, which
+ * stays the source of truth and records the outbox entry, and the stored
+ * product replaces the cached one only after they succeed. Writers and
+ * cache fills are serialized on the class monitor so memory is updated in
+ * the same order as the database. Entries are immutable ProductRecords,
+ * so they are shared with callers without copying.
+ *
+ * Changes made behind the repository's back (a product sync) are reported
+ * through {@link #invalidate(Collection)} or {@link #clear()}.
+ */
+public class ProductRepository {
+    
+    private static final Map<String, ProductRecord> byId = new ConcurrentHashMap<>();
+    
+    // Metrics
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    
+    private ProductRepository() {
+        // Static utility
+    }
+    
+    // ============================================
+    // READS
+    // ============================================
+    
+    /**
+     * Product by id, or null if it does not exist.
+     */
+    public static ProductRecord getById(String productId) throws SQLException {
+        ProductRecord product = byId.get(productId);
+        if (product != null) {
+            hits.incrementAndGet();
+            return product;
+        }
+        misses.incrementAndGet();
+        
+        // Filled under the monitor so a concurrent write or invalidation is not overwritten
+        synchronized (ProductRepository.class) {
+            product = LocalDbService.getProductById(productId);
+            if (product != null) {
+                byId.put(productId, product);
+            }
+            return product;
+        }
+    }
+    
+    // ============================================
+    // WRITES (SQLite first, then memory)
+    // ============================================
+    
+    public static synchronized ProductRecord add(String name, String category, int quantity, double price,
+                                                 String userId) throws SQLException {
+        ProductRecord product = LocalDbService.addProduct(name, category, quantity, price, Config.LOW_STOCK_THRESHOLD, userId);
+        byId.put(product.getId(), product);
+        return product;
+    }
+    
+    /**
+     * Update a product read as current (from {@link #getById}); returns the
+     * stored product, or null if it no longer exists. A quantity change is
+     * recorded in the stock ledger with the given reason.
+     */
+    public static synchronized ProductRecord update(ProductRecord current, String name, String category, int quantity,
+                                                    double price, int lowStockThreshold, String reason,
+                                                    String userId) throws SQLException {
+        if (!LocalDbService.updateProduct(current, name, category, quantity, price, lowStockThreshold, reason, userId)) {
+            byId.remove(current.getId());
+            return null;
+        }
+        ProductRecord product = new ProductRecord(current.getId(), name, category, quantity, price, lowStockThreshold);
+        byId.put(product.getId(), product);
+        return product;
+    }
+    
+    /**
+     * Add delta to a product's quantity atomically; returns the stored
+     * product, or null if it does not exist or would go below zero.
+     */
+    public static synchronized ProductRecord adjustQuantity(String productId, int delta, String reason,
+                                                            String userId) throws SQLException {
+        ProductRecord product = LocalDbService.incrementQuantity(productId, delta, reason, userId);
+        if (product != null) {
+            byId.put(productId, product);
+        }
+        return product;
+    }
+    
+    /**
+     * Sell every line in one transaction (see LocalDbService.checkout);
+     * returns the updated products.
+     */
+    public static synchronized List<ProductRecord> checkout(List<CheckoutLine> lines, String userId) throws SQLException {
+        List<ProductRecord> products = LocalDbService.checkout(lines, userId);
+        for (ProductRecord product : products) {
+            byId.put(product.getId(), product);
+        }
+        return products;
+    }
+    
+    public static synchronized void delete(String productId, String userId) throws SQLException {
+        LocalDbService.deleteProduct(productId, userId);
+        byId.remove(productId);
+    }
+    
+    // ============================================
+    // EXTERNAL CHANGES
+    // ============================================
+    
+    /**
+     * Forget the given ids after they were changed directly in the database;
+     * the next lookup of each reads it again.
+     */
+    public static synchronized void invalidate(Collection<String> productIds) {
+        for (String productId : productIds) {
+            byId.remove(productId);
+        }
+    }
+    
+    /**
+     * Forget every product, after the table was replaced wholesale.
+     */
+    public static synchronized void clear() {
+        byId.clear();
+    }
+    
+    public static RepositoryStats getStats() {
+        return new RepositoryStats(byId.size(), hits.get(), misses.get());
+    }
+    
+    /**
+     * Point-in-time snapshot of cache size and counters
+     */
+    public static class RepositoryStats {
+        private final int products;
+        private final long hits;
+        private final long misses;
+        
+        public RepositoryStats(int products, long hits, long misses) {
+            this.products = products;
+            this.hits = hits;
+            this.misses = misses;
+        }
+        
+        public int getProducts() {
+            return products;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+        
+        @Override
+        public String toString() {
+            return "RepositoryStats{" +
+                    "products=" + products +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    String.format(", hitRatio=%.2f", getHitRatio()) +
+                    '}';
+        }
+    }
+}
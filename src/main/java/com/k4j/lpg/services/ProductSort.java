@@ -0,0 +1,30 @@
+package com.k4j.lpg.services;
+
+/**
+ * Sort keys supported by keyset-paginated product queries.
+ *
+ * Each key has a matching (column, id) index, so fetching the page after a
+ * cursor is an index seek no matter how deep into the catalogue it is. The
+ * id tie-breaker makes the order total, so rows sharing a value are neither
+ * skipped nor repeated across pages.
+ */
+public enum ProductSort {
+    NAME("name"),
+    CATEGORY("category"),
+    QUANTITY("quantity"),
+    LAST_UPDATED("last_updated");
+
+    private final String column;
+
+    ProductSort(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    String indexName() {
+        return "idx_products_" + column;
+    }
+}
@@ -0,0 +1,307 @@
+package com.k4j.lpg.services;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.k4j.lpg.models.ProductRecord;
+import com.k4j.lpg.utils.Config;
+import com.k4j.lpg.utils.SharedHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Incremental product sync between the server and the local SQLite cache.
+ *
+ * The server is asked only for products changed since the stored watermark
+ * (plus tombstones for deleted ids); those rows are upserted/deleted in one
+ * batched transaction and the watermark advances in the same commit, so a
+ * crash mid-sync simply repeats the same delta next time. With no watermark
+ * (first run, or after {@link #resetWatermark()}) the whole catalogue is
+ * fetched and rows missing from it are removed. Products with local edits
+ * still waiting in the outbox are left untouched until the replay lands.
+ *
+ * The response body is streamed: each product is decoded from the socket
+ * and handed to the batched writer before the next one is read, so memory
+ * use does not grow with the size of the catalogue. Responses are requested
+ * gzip-compressed, and the ETag of the last applied response is kept in
+ * sync_metadata and sent back as If-None-Match: when nothing changed the
+ * server answers 304 and the sync finishes without reading a body.
+ */
+public class ProductSyncService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProductSyncService.class);
+    private static final HttpClient httpClient = SharedHttpClient.get();
+    
+    static final String WATERMARK_KEY = "products_watermark";
+    static final String ETAG_KEY = "products_etag";
+    
+    /**
+     * Pull changes from the server into the local cache.
+     */
+    public static SyncResult sync() throws IOException, InterruptedException, SQLException {
+        long since = getWatermark();
+        HttpRequest request = buildRequest(since, LocalDbService.getSyncValue(ETAG_KEY));
+        HttpResponse<InputStream> response = HttpPolicy.send(httpClient, request,
+            HttpResponse.BodyHandlers.ofInputStream(), HttpPolicy.Endpoint.PRODUCT_SYNC);
+        return apply(response, since);
+    }
+    
+    /**
+     * Non-blocking variant: the request is sent with sendAsync and the
+     * response is read and applied to SQLite on the given executor.
+     */
+    public static CompletableFuture<SyncResult> syncAsync(Executor executor) {
+        long since;
+        HttpRequest request;
+        try {
+            since = getWatermark();
+            request = buildRequest(since, LocalDbService.getSyncValue(ETAG_KEY));
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        return HttpPolicy.sendAsync(httpClient, request, HttpResponse.BodyHandlers.ofInputStream(), HttpPolicy.Endpoint.PRODUCT_SYNC)
+                .thenApplyAsync(response -> {
+                    try {
+                        return apply(response, since);
+                    } catch (IOException | SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+    }
+    
+    private static HttpRequest buildRequest(long since, String etag) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(Config.API_BASE_URL + "/products/changes?since=" + since))
+                .header("Authorization", "Bearer " + Config.SUPABASE_ANON_KEY)
+                .header("Accept-Encoding", "gzip");
+        
+        // A full refresh must rebuild the table, so never let it short-circuit
+        if (etag != null && since != 0) {
+            builder.header("If-None-Match", etag);
+        }
+        return builder.GET().build();
+    }
+    
+    private static synchronized SyncResult apply(HttpResponse<InputStream> response, long since) throws IOException, SQLException {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 304) {
+                SyncResult result = new SyncResult(false, 0, 0, 0, since);
+                logger.info("Product sync complete (not modified): " + result);
+                return result;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Product sync failed with HTTP " + response.statusCode());
+            }
+            
+            InputStream decoded = body;
+            if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+                decoded = new GZIPInputStream(body);
+            }
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            return apply(new JsonReader(new InputStreamReader(decoded, StandardCharsets.UTF_8)), since, etag);
+        }
+    }
+    
+    private static SyncResult apply(JsonReader reader, long since, String etag) throws IOException, SQLException {
+        boolean fullRefresh = since == 0;
+        // The server's clock, never ours: a client clock running ahead would skip changes
+        Long serverWatermark = null;
+        
+        // Only a delta sync needs the ids; a full refresh clears the repository
+        List<String> changedIds = new ArrayList<>();
+        SyncResult result;
+        
+        try (ProductBulkWriter writer = LocalDbService.openProductWriter(fullRefresh)) {
+            // Read under the write lock so no mutation can be enqueued in between
+            Set<String> pendingLocal = LocalDbService.getPendingOutboxProductIds();
+            for (String id : pendingLocal) {
+                writer.retain(id);
+            }
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "products" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            ProductRecord product = readProduct(reader);
+                            if (!pendingLocal.contains(product.getId())) {
+                                writer.upsert(product);
+                                if (!fullRefresh) {
+                                    changedIds.add(product.getId());
+                                }
+                            }
+                        }
+                        reader.endArray();
+                    }
+                    case "deleted" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            String id = reader.nextString();
+                            if (!pendingLocal.contains(id)) {
+                                writer.delete(id);
+                                changedIds.add(id);
+                            }
+                        }
+                        reader.endArray();
+                    }
+                    case "watermark" -> serverWatermark = reader.nextLong();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            
+            long watermark;
+            if (serverWatermark != null) {
+                watermark = serverWatermark;
+            } else {
+                // Keep the old position; the next sync re-reads this window, which upserts idempotently
+                logger.warn("Product sync response had no watermark; keeping " + since);
+                watermark = since;
+            }
+            
+            // Advance the watermark atomically with the rows it covers; overlapping
+            // syncs may finish out of order, so never move it backwards
+            if (watermark > getWatermark()) {
+                LocalDbService.setSyncValue(WATERMARK_KEY, String.valueOf(watermark));
+            }
+            // The validator only describes this response once its rows are committed
+            LocalDbService.setSyncValue(ETAG_KEY, etag);
+            writer.commit();
+            
+            result = new SyncResult(fullRefresh, writer.getUpsertedCount(), writer.getDeletedCount(),
+                pendingLocal.size(), watermark);
+        }
+        
+        // Drop the cached copies once the new rows are committed
+        if (fullRefresh) {
+            ProductRepository.clear();
+        } else {
+            ProductRepository.invalidate(changedIds);
+        }
+        logger.info("Product sync complete: " + result);
+        return result;
+    }
+    
+    /**
+     * Forget the watermark so the next sync fetches the whole catalogue.
+     */
+    public static void resetWatermark() throws SQLException {
+        LocalDbService.setSyncValue(WATERMARK_KEY, null);
+        LocalDbService.setSyncValue(ETAG_KEY, null);
+    }
+    
+    static long getWatermark() throws SQLException {
+        String value = LocalDbService.getSyncValue(WATERMARK_KEY);
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed product watermark: " + value);
+            return 0;
+        }
+    }
+    
+    // Decode one product object; unknown fields (createdAt, updatedAt, ...) are skipped
+    static ProductRecord readProduct(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String category = null;
+        int quantity = 0;
+        double price = 0;
+        int lowStockThreshold = Config.LOW_STOCK_THRESHOLD;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id" -> id = reader.nextString();
+                case "name" -> name = reader.nextString();
+                case "category" -> category = reader.nextString();
+                case "quantity" -> quantity = reader.nextInt();
+                case "price" -> price = reader.nextDouble();
+                case "low_stock_threshold" -> lowStockThreshold = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        if (id == null || name == null || category == null) {
+            throw new IOException("Product sync response has a product without id, name or category");
+        }
+        return new ProductRecord(id, name, category, quantity, price, lowStockThreshold);
+    }
+    
+    /**
+     * Outcome of one sync run
+     */
+    public static class SyncResult {
+        private final boolean fullRefresh;
+        private final int upserted;
+        private final int deleted;
+        private final int pendingLocal;
+        private final long watermark;
+        
+        public SyncResult(boolean fullRefresh, int upserted, int deleted, int pendingLocal, long watermark) {
+            this.fullRefresh = fullRefresh;
+            this.upserted = upserted;
+            this.deleted = deleted;
+            this.pendingLocal = pendingLocal;
+            this.watermark = watermark;
+        }
+        
+        public boolean isFullRefresh() {
+            return fullRefresh;
+        }
+        
+        public int getUpserted() {
+            return upserted;
+        }
+        
+        public int getDeleted() {
+            return deleted;
+        }
+        
+        public int getPendingLocal() {
+            return pendingLocal;
+        }
+        
+        public long getWatermark() {
+            return watermark;
+        }
+        
+        @Override
+        public String toString() {
+            return "SyncResult{" +
+                    "mode=" + (fullRefresh ? "full" : "delta") +
+                    ", upserted=" + upserted +
+                    ", deleted=" + deleted +
+                    ", pendingLocal=" + pendingLocal +
+                    ", watermark=" + watermark +
+                    '}';
+        }
+    }
+}
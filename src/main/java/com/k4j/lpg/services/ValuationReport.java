@@ -0,0 +1,116 @@
+package com.k4j.lpg.services;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stock valuation for end-of-day closing: overall, per category and per
+ * stock level, as of one snapshot of the local database.
+ */
+public class ValuationReport {
+    
+    /**
+     * Where a product's quantity sits relative to its low-stock threshold
+     */
+    public enum StockLevel {
+        OUT_OF_STOCK("Out of stock"),
+        LOW("Low stock"),
+        NEAR_LOW("Near low (up to 2x threshold)"),
+        HEALTHY("Healthy");
+        
+        private final String label;
+        
+        StockLevel(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+        
+        public static StockLevel of(int quantity, int lowStockThreshold) {
+            if (quantity <= 0) {
+                return OUT_OF_STOCK;
+            }
+            if (quantity <= lowStockThreshold) {
+                return LOW;
+            }
+            if (quantity <= 2L * lowStockThreshold) {
+                return NEAR_LOW;
+            }
+            return HEALTHY;
+        }
+    }
+    
+    private final long generatedAt;
+    private final CategoryTotals total;
+    private final Map<String, CategoryTotals> byCategory;
+    private final Map<StockLevel, CategoryTotals> byStockLevel;
+    private final long elapsedMillis;
+    
+    public ValuationReport(long generatedAt, CategoryTotals total, Map<String, CategoryTotals> byCategory,
+                           Map<StockLevel, CategoryTotals> byStockLevel, long elapsedMillis) {
+        this.generatedAt = generatedAt;
+        this.total = total;
+        this.byCategory = byCategory;
+        this.byStockLevel = byStockLevel;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    /**
+     * Epoch millis at which the snapshot was read.
+     */
+    public long getGeneratedAt() {
+        return generatedAt;
+    }
+    
+    public CategoryTotals getTotal() {
+        return total;
+    }
+    
+    /**
+     * Ordered by category name; products without a category are under "".
+     */
+    public Map<String, CategoryTotals> getByCategory() {
+        return byCategory;
+    }
+    
+    /**
+     * Every level is present, in enum order, even if empty.
+     */
+    public Map<StockLevel, CategoryTotals> getByStockLevel() {
+        return byStockLevel;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    /**
+     * The report as CSV: one line per category, stock level and the total.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("section,name,products,quantity,stock_value\n");
+        byCategory.forEach((category, totals) -> appendCsv(csv, "category", category, totals));
+        byStockLevel.forEach((level, totals) -> appendCsv(csv, "stock_level", level.getLabel(), totals));
+        appendCsv(csv, "total", "All products", total);
+        return csv.toString();
+    }
+    
+    private static void appendCsv(StringBuilder csv, String section, String name, CategoryTotals totals) {
+        String quoted = "\"" + name.replace("\"", "\"\"") + "\"";
+        csv.append(section).append(',').append(quoted).append(',')
+           .append(totals.getProducts()).append(',')
+           .append(totals.getQuantity()).append(',')
+           .append(String.format(Locale.ROOT, "%.2f", totals.getStockValue())).append('\n');
+    }
+    
+    @Override
+    public String toString() {
+        return "ValuationReport{" +
+                "total=" + total +
+                ", categories=" + byCategory.size() +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,175 @@
+package com.k4j.lpg.services;
+
+import com.k4j.lpg.services.ValuationReport.StockLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds a {@link ValuationReport} by scanning the products table in
+ * parallel.
+ *
+ * The rowid range is split into one slice per reader connection and each
+ * slice is streamed and aggregated by its own fork/join worker, so both
+ * the JDBC row stepping and the summing run concurrently. Rows are folded
+ * straight into per-category and per-stock-level sums; no Product or
+ * ProductRecord is created, so memory does not grow with the catalogue.
+ * The readers must already share one snapshot (LocalDbService pins them)
+ * or the slices would disagree about concurrent writes.
+ *
+ * Values are summed in whole cents as longs, so the totals are exact and do
+ * not depend on the order in which slices finish.
+ */
+class ValuationReportEngine {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ValuationReportEngine.class);
+    
+    private static final String SLICE_SQL =
+        "SELECT category, quantity, price, low_stock_threshold FROM products WHERE rowid BETWEEN ? AND ?";
+    
+    private final List<Connection> readers;
+    private final long minRowid;
+    private final long maxRowid;
+    
+    /**
+     * @param readers one connection per worker, all in a read transaction on the same snapshot
+     */
+    ValuationReportEngine(List<Connection> readers, long minRowid, long maxRowid) {
+        this.readers = readers;
+        this.minRowid = minRowid;
+        this.maxRowid = maxRowid;
+    }
+    
+    ValuationReport run() throws SQLException {
+        long startNanos = System.nanoTime();
+        long generatedAt = System.currentTimeMillis();
+        Partial result = new Partial();
+        
+        if (maxRowid >= minRowid) {
+            int slices = readers.size();
+            long span = (maxRowid - minRowid) / slices + 1;
+            ForkJoinPool workers = new ForkJoinPool(slices);
+            try {
+                List<ForkJoinTask<Partial>> tasks = new ArrayList<>(slices);
+                for (int i = 0; i < slices; i++) {
+                    Connection conn = readers.get(i);
+                    long from = minRowid + i * span;
+                    long to = i == slices - 1 ? maxRowid : from + span - 1;
+                    tasks.add(workers.submit(() -> scan(conn, from, to)));
+                }
+                for (ForkJoinTask<Partial> task : tasks) {
+                    result.merge(task.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Valuation report interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof SQLException sqlException
+                    ? sqlException
+                    : new SQLException("Valuation report failed", e.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+        
+        ValuationReport report = result.toReport(generatedAt, (System.nanoTime() - startNanos) / 1_000_000);
+        logger.info("Valuation report: " + report.getTotal().getProducts() + " products over "
+            + readers.size() + " slice(s) in " + report.getElapsedMillis() + " ms");
+        return report;
+    }
+    
+    // Stream one rowid slice into its own sums
+    private static Partial scan(Connection conn, long from, long to) throws SQLException {
+        Partial partial = new Partial();
+        try (PreparedStatement pstmt = conn.prepareStatement(SLICE_SQL)) {
+            pstmt.setLong(1, from);
+            pstmt.setLong(2, to);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                String lastCategory = null;
+                long[] categorySums = null;
+                while (rs.next()) {
+                    String category = rs.getString(1);
+                    // Neighbouring rows often share a category; skip the map lookup then
+                    if (categorySums == null || !category.equals(lastCategory)) {
+                        lastCategory = category;
+                        categorySums = partial.categorySums(category);
+                    }
+                    
+                    int quantity = rs.getInt(2);
+                    long cents = quantity * Math.round(rs.getDouble(3) * 100);
+                    long[] levelSums = partial.levels.get(StockLevel.of(quantity, rs.getInt(4)));
+                    add(categorySums, quantity, cents);
+                    add(levelSums, quantity, cents);
+                }
+            }
+        }
+        return partial;
+    }
+    
+    // Sums are {products, units, cents}
+    private static void add(long[] sums, long quantity, long cents) {
+        sums[0]++;
+        sums[1] += quantity;
+        sums[2] += cents;
+    }
+    
+    private static CategoryTotals toTotals(long[] sums) {
+        return new CategoryTotals((int) sums[0], sums[1], sums[2] / 100.0);
+    }
+    
+    // Running sums of one slice, or of all of them once merged
+    private static class Partial {
+        private final Map<String, long[]> categories = new HashMap<>();
+        private final Map<StockLevel, long[]> levels = new EnumMap<>(StockLevel.class);
+        
+        Partial() {
+            for (StockLevel level : StockLevel.values()) {
+                levels.put(level, new long[3]);
+            }
+        }
+        
+        long[] categorySums(String category) {
+            return categories.computeIfAbsent(category != null ? category : "", c -> new long[3]);
+        }
+        
+        void merge(Partial other) {
+            other.categories.forEach((category, sums) -> addAll(categorySums(category), sums));
+            other.levels.forEach((level, sums) -> addAll(levels.get(level), sums));
+        }
+        
+        private static void addAll(long[] into, long[] sums) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += sums[i];
+            }
+        }
+        
+        ValuationReport toReport(long generatedAt, long elapsedMillis) {
+            Map<String, CategoryTotals> byCategory = new LinkedHashMap<>();
+            new TreeMap<>(categories).forEach((category, sums) -> byCategory.put(category, toTotals(sums)));
+            
+            Map<StockLevel, CategoryTotals> byStockLevel = new EnumMap<>(StockLevel.class);
+            long[] total = new long[3];
+            levels.forEach((level, sums) -> {
+                byStockLevel.put(level, toTotals(sums));
+                addAll(total, sums);
+            });
+            
+            return new ValuationReport(generatedAt, toTotals(total), byCategory, byStockLevel, elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.k4j.lpg.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checkpoints the WAL file so it does not keep growing during a
+ * long shift. A PASSIVE checkpoint never blocks readers or the writer; when
+ * the log has grown past the configured size a TRUNCATE checkpoint is tried
+ * to shrink the -wal file back to zero bytes.
+ */
+public class WalCheckpointScheduler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WalCheckpointScheduler.class);
+    
+    private final ConnectionPool pool;
+    private final long intervalSeconds;
+    private final int truncateThresholdPages;
+    private ScheduledExecutorService scheduler;
+    
+    public WalCheckpointScheduler(ConnectionPool pool, long intervalSeconds, int truncateThresholdPages) {
+        this.pool = pool;
+        this.intervalSeconds = intervalSeconds;
+        this.truncateThresholdPages = truncateThresholdPages;
+    }
+    
+    public synchronized void start() {
+        if (scheduler != null || intervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "k4j-wal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runCheckpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        logger.info("WAL checkpoint scheduled every " + intervalSeconds + "s");
+    }
+    
+    /**
+     * Stop the schedule and fold the whole WAL back into the database file.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        checkpoint("TRUNCATE");
+    }
+    
+    private void runCheckpoint() {
+        int logPages = checkpoint("PASSIVE");
+        if (logPages >= truncateThresholdPages) {
+            checkpoint("TRUNCATE");
+        }
+    }
+    
+    /**
+     * Run one checkpoint and return the WAL size in pages, or -1 on failure.
+     */
+    int checkpoint(String mode) {
+        try (Connection conn = pool.getWriteConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+            
+            if (rs.next()) {
+                boolean busy = rs.getInt(1) != 0;
+                int logPages = rs.getInt(2);
+                int checkpointed = rs.getInt(3);
+                logger.debug("WAL checkpoint " + mode + ": busy=" + busy + ", log=" + logPages + ", checkpointed=" + checkpointed);
+                return logPages;
+            }
+        } catch (SQLException e) {
+            logger.warn("WAL checkpoint (" + mode + ") failed: " + e.getMessage());
+        }
+        return -1;
+    }
+}
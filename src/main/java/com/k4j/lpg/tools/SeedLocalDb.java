@@ -1,6 +1,6 @@
 package com.k4j.lpg.tools;
 
-import com.k4j.lpg.models.Product;
+import com.k4j.lpg.models.ProductRecord;
 import com.k4j.lpg.models.User;
 import com.k4j.lpg.services.LocalDbService;
 
@@ -23,10 +23,10 @@ public class SeedLocalDb {
             LocalDbService.addUser("admin", "admin123", "admin");
 
             // Seed a few sample products
-            List<Product> products = Arrays.asList(
-                    new Product(UUID.randomUUID().toString(), "Propane Cylinder 11kg", "Gas", 50, 1200.00, 20),
-                    new Product(UUID.randomUUID().toString(), "Regulator", "Accessory", 150, 450.00, 20),
-                    new Product(UUID.randomUUID().toString(), "Gas Hose 1m", "Accessory", 80, 150.00, 20)
+            List<ProductRecord> products = Arrays.asList(
+                    new ProductRecord(UUID.randomUUID().toString(), "Propane Cylinder 11kg", "Gas", 50, 1200.00, 20),
+                    new ProductRecord(UUID.randomUUID().toString(), "Regulator", "Accessory", 150, 450.00, 20),
+                    new ProductRecord(UUID.randomUUID().toString(), "Gas Hose 1m", "Accessory", 80, 150.00, 20)
             );
 
             LocalDbService.cacheProducts(products);
@@ -0,0 +1,226 @@
+package com.k4j.lpg.utils;
+
+import javafx.concurrent.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application-wide runner for controller background work.
+ *
+ * Every task runs on its own virtual thread named after the task, so a burst
+ * of clicks no longer creates a platform thread each. A semaphore caps how
+ * many tasks execute at once; the rest wait (cheaply, on their virtual
+ * thread) and show up as queue depth in the stats. Tasks submitted with
+ * {@link #runLatest(String, Task)} cancel the previous task with the same key,
+ * so e.g. a second loadProducts supersedes the first instead of racing it.
+ */
+public class BackgroundTasks {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundTasks.class);
+    
+    private static final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("k4j-task-", 0).factory());
+    private static final Semaphore permits = new Semaphore(Config.BACKGROUND_MAX_CONCURRENT_TASKS);
+    private static final Map<String, Task<?>> latestByKey = new ConcurrentHashMap<>();
+    
+    // Metrics
+    private static final AtomicLong submitted = new AtomicLong();
+    private static final AtomicLong succeeded = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong cancelled = new AtomicLong();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicLong totalQueueNanos = new AtomicLong();
+    private static final AtomicLong totalRunNanos = new AtomicLong();
+    
+    private BackgroundTasks() {
+        // Static utility
+    }
+    
+    /**
+     * Run a task in the background.
+     */
+    public static <T> Task<T> run(String name, Task<T> task) {
+        submitted.incrementAndGet();
+        queued.incrementAndGet();
+        long queuedAt = System.nanoTime();
+        
+        executor.execute(() -> {
+            Thread.currentThread().setName("k4j-task-" + name);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                task.cancel();
+                cancelled.incrementAndGet();
+                return;
+            }
+            
+            long startedAt = System.nanoTime();
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            totalQueueNanos.addAndGet(startedAt - queuedAt);
+            try {
+                if (!task.isCancelled()) {
+                    task.run();
+                }
+            } finally {
+                running.decrementAndGet();
+                permits.release();
+                totalRunNanos.addAndGet(System.nanoTime() - startedAt);
+                record(name, task);
+            }
+        });
+        return task;
+    }
+    
+    /**
+     * Run a task, cancelling any still-running task submitted under the same key.
+     */
+    public static <T> Task<T> runLatest(String key, Task<T> task) {
+        Task<?> previous = latestByKey.put(key, task);
+        if (previous != null && !previous.isDone()) {
+            previous.cancel(true);
+            logger.debug("Superseded background task: " + key);
+        }
+        task.stateProperty().addListener((obs, oldState, newState) -> {
+            if (task.isDone()) {
+                latestByKey.remove(key, task);
+            }
+        });
+        return run(key, task);
+    }
+    
+    /**
+     * Cancel the running task for a key, if any.
+     */
+    public static void cancel(String key) {
+        Task<?> task = latestByKey.remove(key);
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+    
+    // Task extends FutureTask, so get() reports the outcome immediately after run()
+    private static void record(String name, Task<?> task) {
+        if (task.isCancelled()) {
+            cancelled.incrementAndGet();
+            return;
+        }
+        try {
+            task.get();
+            succeeded.incrementAndGet();
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            logger.warn("Background task failed: " + name, e.getCause());
+        } catch (InterruptedException | CancellationException e) {
+            cancelled.incrementAndGet();
+        }
+    }
+    
+    public static TaskStats getStats() {
+        long finished = succeeded.get() + failed.get() + cancelled.get();
+        return new TaskStats(
+            submitted.get(),
+            succeeded.get(),
+            failed.get(),
+            cancelled.get(),
+            queued.get(),
+            running.get(),
+            finished == 0 ? 0 : totalQueueNanos.get() / finished / 1_000_000,
+            finished == 0 ? 0 : totalRunNanos.get() / finished / 1_000_000
+        );
+    }
+    
+    /**
+     * Cancel outstanding work on application exit
+     */
+    public static void shutdown() {
+        latestByKey.values().forEach(task -> task.cancel(true));
+        latestByKey.clear();
+        executor.shutdownNow();
+        logger.info("Background tasks stopped: " + getStats());
+    }
+    
+    /**
+     * Point-in-time snapshot of background task counters
+     */
+    public static class TaskStats {
+        private final long submitted;
+        private final long succeeded;
+        private final long failed;
+        private final long cancelled;
+        private final int queueDepth;
+        private final int running;
+        private final long averageQueueMillis;
+        private final long averageRunMillis;
+        
+        public TaskStats(long submitted, long succeeded, long failed, long cancelled,
+                         int queueDepth, int running, long averageQueueMillis, long averageRunMillis) {
+            this.submitted = submitted;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.queueDepth = queueDepth;
+            this.running = running;
+            this.averageQueueMillis = averageQueueMillis;
+            this.averageRunMillis = averageRunMillis;
+        }
+        
+        public long getSubmitted() {
+            return submitted;
+        }
+        
+        public long getSucceeded() {
+            return succeeded;
+        }
+        
+        public long getFailed() {
+            return failed;
+        }
+        
+        public long getCancelled() {
+            return cancelled;
+        }
+        
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+        
+        public int getRunning() {
+            return running;
+        }
+        
+        public long getAverageQueueMillis() {
+            return averageQueueMillis;
+        }
+        
+        public long getAverageRunMillis() {
+            return averageRunMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return "TaskStats{" +
+                    "submitted=" + submitted +
+                    ", succeeded=" + succeeded +
+                    ", failed=" + failed +
+                    ", cancelled=" + cancelled +
+                    ", queued=" + queueDepth +
+                    ", running=" + running +
+                    ", avgQueueMs=" + averageQueueMillis +
+                    ", avgRunMs=" + averageRunMillis +
+                    '}';
+        }
+    }
+}
@@ -23,6 +23,67 @@ public class Config {
     // Low stock threshold
     public static final int LOW_STOCK_THRESHOLD = 20;
     
+    // Local SQLite cache connection pool
+    public static final int LOCAL_DB_READER_CONNECTIONS = 3;
+    // Extra readers for the valuation report, which scans with at most this many
+    // slices (fewer on machines with fewer cores). The pool is sized for both, so
+    // a running report never starves the dashboards of readers.
+    public static final int LOCAL_DB_REPORT_READER_CONNECTIONS = Integer.getInteger("k4j.db.reportReaders", 4);
+    public static final long LOCAL_DB_ACQUIRE_TIMEOUT_MS = 5000;
+    
+    // Local SQLite durability/performance profile: SAFE, BALANCED (WAL) or FAST.
+    // Override with -Dk4j.db.profile=SAFE on machines with unreliable power.
+    public static final String LOCAL_DB_PROFILE = System.getProperty("k4j.db.profile", "BALANCED");
+    public static final int LOCAL_DB_CACHE_SIZE_KB = Integer.getInteger("k4j.db.cacheSizeKb", 16 * 1024);
+    public static final long LOCAL_DB_MMAP_SIZE_BYTES = Long.getLong("k4j.db.mmapSize", 128L * 1024 * 1024);
+    public static final int LOCAL_DB_BUSY_TIMEOUT_MS = Integer.getInteger("k4j.db.busyTimeoutMs", 5000);
+    
+    // WAL checkpointing: passive checkpoint interval, and WAL size (pages) that triggers a truncate
+    public static final long LOCAL_DB_CHECKPOINT_INTERVAL_SECONDS = Long.getLong("k4j.db.checkpointIntervalSeconds", 300);
+    public static final int LOCAL_DB_WAL_AUTOCHECKPOINT_PAGES = 1000;
+    public static final int LOCAL_DB_WAL_TRUNCATE_PAGES = 4000;
+    
+    // Rows per executeBatch() call when bulk-loading products
+    public static final int LOCAL_DB_BULK_BATCH_SIZE = 1000;
+    
+    // Worker threads for parsing API responses and async local database calls
+    public static final int API_EXECUTOR_THREADS = 4;
+    
+    // Outbox entries read per replay batch (coalesced per product before sending)
+    public static final int OUTBOX_BATCH_SIZE = 200;
+    // A rejected outbox change waits RETRY_BASE * 2^attempts before it is resent,
+    // and is parked after MAX_ATTEMPTS until the next launch
+    public static final int OUTBOX_MAX_ATTEMPTS = 5;
+    public static final long OUTBOX_RETRY_BASE_SECONDS = 30;
+    
+    // Controller background tasks allowed to run at once (the rest queue up)
+    public static final int BACKGROUND_MAX_CONCURRENT_TASKS = 16;
+    
+    // Connectivity monitor: probe interval while online, backoff while offline
+    public static final long NETWORK_PROBE_INTERVAL_SECONDS = 30;
+    public static final long NETWORK_BACKOFF_INITIAL_SECONDS = 2;
+    public static final long NETWORK_BACKOFF_MAX_SECONDS = 60;
+    public static final long NETWORK_STATE_TTL_SECONDS = 60;
+    
+    // Server calls: per-endpoint request timeouts, retry backoff for idempotent
+    // calls, and the circuit breaker that falls back to local data
+    public static final long HTTP_CONNECT_TIMEOUT_SECONDS = 10;
+    public static final long HTTP_KEEPALIVE_SECONDS = 120;
+    public static final long HTTP_TIMEOUT_AUTH_SECONDS = 15;
+    public static final long HTTP_TIMEOUT_DEFAULT_SECONDS = 20;
+    public static final long HTTP_TIMEOUT_SYNC_SECONDS = 60;
+    public static final int HTTP_RETRY_MAX_ATTEMPTS = 3;
+    public static final long HTTP_RETRY_BASE_DELAY_MS = 250;
+    public static final long HTTP_RETRY_MAX_DELAY_MS = 4000;
+    public static final int HTTP_CIRCUIT_FAILURE_THRESHOLD = 5;
+    public static final long HTTP_CIRCUIT_OPEN_SECONDS = 30;
+    
+    // Rows fetched per dashboard page / search request
+    public static final int PRODUCT_PAGE_SIZE = 200;
+    
+    // Delay after the last keystroke before the product filter is applied
+    public static final int SEARCH_DEBOUNCE_MS = 150;
+    
     // Application info
     public static final String APP_NAME = "K4J LPG Center";
     public static final String APP_VERSION = "1.0.0";
@@ -3,57 +3,199 @@ package com.k4j.lpg.utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Connectivity monitor for the API server.
+ *
+ * The /health endpoint is probed on a background thread: every
+ * NETWORK_PROBE_INTERVAL_SECONDS while online, and with exponential backoff
+ * (starting at NETWORK_BACKOFF_INITIAL_SECONDS) while offline. isOnline()
+ * only reads the cached state, so callers never wait on the network. When
+ * the cached state is older than NETWORK_STATE_TTL_SECONDS an immediate
+ * re-probe is requested in the background. Listeners are notified on every
+ * online/offline transition. Probes go through {@link SharedHttpClient}, so
+ * they reuse (and keep alive) the connection the API calls use.
+ */
 public class NetworkChecker {
     
     private static final Logger logger = LoggerFactory.getLogger(NetworkChecker.class);
     
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "k4j-network-monitor");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static final Object probeLock = new Object();
+    
+    // Cached state; null until the first probe completes
+    private static volatile Boolean online;
+    private static volatile long lastProbeMillis;
+    private static volatile long backoffSeconds = Config.NETWORK_BACKOFF_INITIAL_SECONDS;
+    private static ScheduledFuture<?> nextProbe;
+    
+    private NetworkChecker() {
+        // Static utility
+    }
+    
+    /**
+     * Start background probing (idempotent).
+     */
+    public static void start() {
+        if (started.compareAndSet(false, true)) {
+            schedule(0);
+            logger.info("Network monitor started");
+        }
+    }
+    
+    /**
+     * Stop background probing.
+     */
+    public static void stop() {
+        if (started.compareAndSet(true, false)) {
+            scheduler.shutdownNow();
+            logger.info("Network monitor stopped");
+        }
+    }
+    
+    /**
+     * Last known connectivity state. Only the very first call, before any
+     * probe has finished, checks the network synchronously.
+     */
     public static boolean isOnline() {
-        HttpURLConnection connection = null;
+        Boolean state = online;
+        if (state == null) {
+            return probeNow();
+        }
+        if (System.currentTimeMillis() - lastProbeMillis > Config.NETWORK_STATE_TTL_SECONDS * 1000) {
+            refresh();
+        }
+        return state;
+    }
+    
+    /**
+     * Ask for a re-probe as soon as possible, e.g. after a request failed
+     * with a connection error.
+     */
+    public static void refresh() {
+        if (started.get()) {
+            schedule(0);
+        }
+    }
+    
+    public static void addListener(Consumer<Boolean> listener) {
+        listeners.add(listener);
+    }
+    
+    public static void removeListener(Consumer<Boolean> listener) {
+        listeners.remove(listener);
+    }
+    
+    private static synchronized void schedule(long delaySeconds) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (nextProbe != null && !nextProbe.isDone()) {
+            if (delaySeconds > 0 || nextProbe.getDelay(TimeUnit.SECONDS) <= 0) {
+                return;
+            }
+            nextProbe.cancel(false);
+        }
+        nextProbe = scheduler.schedule(NetworkChecker::probeAndReschedule, delaySeconds, TimeUnit.SECONDS);
+    }
+    
+    private static void probeAndReschedule() {
+        boolean up = probeNow();
+        long delay;
+        if (up) {
+            backoffSeconds = Config.NETWORK_BACKOFF_INITIAL_SECONDS;
+            delay = Config.NETWORK_PROBE_INTERVAL_SECONDS;
+        } else {
+            delay = backoffSeconds;
+            backoffSeconds = Math.min(backoffSeconds * 2, Config.NETWORK_BACKOFF_MAX_SECONDS);
+        }
+        synchronized (NetworkChecker.class) {
+            nextProbe = null;
+        }
+        schedule(delay);
+    }
+    
+    // Serialized so the first synchronous call and the monitor never probe at once
+    private static boolean probeNow() {
+        synchronized (probeLock) {
+            boolean up = probe();
+            Boolean previous = online;
+            online = up;
+            lastProbeMillis = System.currentTimeMillis();
+            
+            if (previous == null || previous != up) {
+                logger.info("Network state changed: " + (up ? "online" : "offline"));
+                for (Consumer<Boolean> listener : listeners) {
+                    try {
+                        listener.accept(up);
+                    } catch (Exception e) {
+                        logger.warn("Network listener failed", e);
+                    }
+                }
+            }
+            return up;
+        }
+    }
+    
+    private static boolean probe() {
         try {
             // Try to connect to Supabase
-            URL url = URI.create(Config.API_BASE_URL + "/health").toURL();
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(2000);
-            connection.setReadTimeout(2000);
-            connection.connect();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(Config.API_BASE_URL + "/health"))
+                    .timeout(Duration.ofSeconds(2))
+                    .GET()
+                    .build();
+            HttpResponse<Void> response = SharedHttpClient.get().send(request, HttpResponse.BodyHandlers.discarding());
+            SharedHttpClient.recordResponse(response);
             
-            int responseCode = connection.getResponseCode();
+            int responseCode = response.statusCode();
             return responseCode >= 200 && responseCode < 500;
-            
+        
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
-            logger.warn("Network check failed, assuming offline: " + e.getMessage());
+            logger.debug("Network probe failed: " + e.getMessage());
             return false;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
     
     public static boolean isSupabaseReachable() {
-        HttpURLConnection connection = null;
         try {
             String baseUrl = Config.API_BASE_URL.replace("/functions/v1/make-server-9f945771", "");
-            URL url = URI.create(baseUrl).toURL();
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("HEAD");
-            connection.setConnectTimeout(3000);
-            connection.connect();
-            
-            int responseCode = connection.getResponseCode();
-            return responseCode == 200;
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl))
+                    .timeout(Duration.ofSeconds(3))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            HttpResponse<Void> response = SharedHttpClient.get().send(request, HttpResponse.BodyHandlers.discarding());
+            SharedHttpClient.recordResponse(response);
             
+            return response.statusCode() == 200;
+        
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
             return false;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 }
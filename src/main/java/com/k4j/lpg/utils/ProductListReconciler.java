@@ -0,0 +1,151 @@
+package com.k4j.lpg.utils;
+
+import com.k4j.lpg.models.Product;
+import javafx.collections.ObservableList;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a table's product list in line with freshly loaded products
+ * without replacing it wholesale.
+ *
+ * Rows are matched by id. A product still present keeps its Product object
+ * and takes the new values in place (see {@link Product#update}), so the
+ * table redraws only the cells that changed and keeps its selection and
+ * scroll position. Products that disappeared are removed in one change,
+ * rows out of order are put right with one permutation, and new ones are
+ * inserted at their position (consecutive ones in one change). A refresh
+ * in which three products changed therefore touches three rows.
+ */
+public class ProductListReconciler {
+    
+    private ProductListReconciler() {
+        // Static utility
+    }
+    
+    /**
+     * Make target hold exactly the products of fresh, in that order.
+     */
+    public static Result reconcile(ObservableList<Product> target, List<Product> fresh) {
+        Map<String, Integer> freshIndex = new HashMap<>(fresh.size() * 2);
+        for (int i = 0; i < fresh.size(); i++) {
+            freshIndex.put(fresh.get(i).getId(), i);
+        }
+        
+        // Product does not define equals, so the set matches by identity
+        Set<Product> gone = new HashSet<>();
+        Map<String, Product> kept = new HashMap<>(target.size() * 2);
+        for (Product product : target) {
+            if (freshIndex.containsKey(product.getId()) && !kept.containsKey(product.getId())) {
+                kept.put(product.getId(), product);
+            } else {
+                gone.add(product);
+            }
+        }
+        if (!gone.isEmpty()) {
+            target.removeAll(gone);
+        }
+        
+        int moved = 0;
+        if (!inFreshOrder(target, freshIndex)) {
+            Product[] before = target.toArray(new Product[0]);
+            target.sort(Comparator.comparingInt(product -> freshIndex.get(product.getId())));
+            for (int i = 0; i < before.length; i++) {
+                if (target.get(i) != before[i]) {
+                    moved++;
+                }
+            }
+        }
+        
+        // Target is now fresh minus the new products; walk fresh to insert them
+        int updated = 0;
+        int inserted = 0;
+        int i = 0;
+        while (i < fresh.size()) {
+            Product next = fresh.get(i);
+            Product existing = kept.get(next.getId());
+            
+            if (existing == null) {
+                int end = i + 1;
+                while (end < fresh.size() && !kept.containsKey(fresh.get(end).getId())) {
+                    end++;
+                }
+                target.addAll(i, fresh.subList(i, end));
+                inserted += end - i;
+                i = end;
+                continue;
+            }
+            
+            if (existing.update(next.toRecord())) {
+                updated++;
+            }
+            i++;
+        }
+        
+        return new Result(inserted, gone.size(), moved, updated);
+    }
+    
+    private static boolean inFreshOrder(List<Product> list, Map<String, Integer> freshIndex) {
+        int last = -1;
+        for (Product product : list) {
+            int index = freshIndex.get(product.getId());
+            if (index < last) {
+                return false;
+            }
+            last = index;
+        }
+        return true;
+    }
+    
+    /**
+     * How many rows a reconcile inserted, removed, moved and updated
+     */
+    public static class Result {
+        private final int inserted;
+        private final int removed;
+        private final int moved;
+        private final int updated;
+        
+        public Result(int inserted, int removed, int moved, int updated) {
+            this.inserted = inserted;
+            this.removed = removed;
+            this.moved = moved;
+            this.updated = updated;
+        }
+        
+        public int getInserted() {
+            return inserted;
+        }
+        
+        public int getRemoved() {
+            return removed;
+        }
+        
+        public int getMoved() {
+            return moved;
+        }
+        
+        public int getUpdated() {
+            return updated;
+        }
+        
+        public boolean isUnchanged() {
+            return inserted == 0 && removed == 0 && moved == 0 && updated == 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "inserted=" + inserted +
+                    ", removed=" + removed +
+                    ", moved=" + moved +
+                    ", updated=" + updated +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.k4j.lpg.utils;
+
+import com.k4j.lpg.models.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * N-gram index over product name and category for the dashboard search box.
+ *
+ * Every 1-, 2- and 3-character substring of the lower-cased name and
+ * category maps to a sorted list of product slots containing it. A query of
+ * up to three characters is a single posting-list scan; a longer query
+ * merges the postings of its trigrams (smallest first) and confirms the few
+ * candidates with contains(), so results are exactly the old "name or
+ * category contains the text, ignoring case" filter without touching every
+ * product per keystroke.
+ *
+ * Slots are plain ints so postings stay compact. Updating or removing a
+ * product retires its slot (a new one is appended for the new values) and
+ * retired slots are skipped at query time; once they outnumber live ones
+ * the index is compacted.
+ *
+ * {@link #rebuild(Collection)} builds a fresh index (safe to call off the FX
+ * thread) and swaps it in; {@link #put(Product)} and {@link #remove(String)}
+ * update it incrementally. A background load should rebuild a separate
+ * index and {@link #replaceWith} it once its results are accepted, so a
+ * superseded load never overwrites a newer one.
+ */
+public class ProductSearchIndex {
+    
+    private static final int MAX_GRAM = 3;
+    
+    private State state = new State(16);
+    
+    /**
+     * Replace the whole index with the given products.
+     */
+    public void rebuild(Collection<Product> products) {
+        State fresh = new State(products.size());
+        for (Product product : products) {
+            fresh.add(product.getId(), keyOf(product));
+        }
+        
+        synchronized (this) {
+            state = fresh;
+        }
+    }
+    
+    /**
+     * Take over the contents of another index, which should not be used
+     * afterwards.
+     */
+    public void replaceWith(ProductSearchIndex other) {
+        State taken;
+        synchronized (other) {
+            taken = other.state;
+        }
+        synchronized (this) {
+            state = taken;
+        }
+    }
+    
+    /**
+     * Add or update one product.
+     */
+    public synchronized void put(Product product) {
+        String key = keyOf(product);
+        Integer slot = state.slotById.get(product.getId());
+        if (slot != null && key.equals(state.keys.get(slot))) {
+            return;
+        }
+        if (slot != null) {
+            state.retire(slot);
+        }
+        state.add(product.getId(), key);
+        compactIfNeeded();
+    }
+    
+    public synchronized void remove(String productId) {
+        Integer slot = state.slotById.remove(productId);
+        if (slot != null) {
+            state.retire(slot);
+            compactIfNeeded();
+        }
+    }
+    
+    /**
+     * Ids of products whose name or category contains the query (ignoring
+     * case), or null when the query is blank and everything matches.
+     */
+    public synchronized Set<String> search(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        String q = query.toLowerCase(Locale.ROOT);
+        Set<String> result = new HashSet<>();
+        
+        if (q.length() <= MAX_GRAM) {
+            IntList slots = state.postings.get(q);
+            if (slots != null) {
+                for (int i = 0; i < slots.size; i++) {
+                    String id = state.ids.get(slots.values[i]);
+                    if (id != null) {
+                        result.add(id);
+                    }
+                }
+            }
+            return result;
+        }
+        
+        IntList[] lists = new IntList[q.length() - MAX_GRAM + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = state.postings.get(q.substring(i, i + MAX_GRAM));
+            if (lists[i] == null) {
+                return result;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        
+        // Postings are sorted, so each list is walked forward once
+        int[] cursors = new int[lists.length];
+        candidates:
+        for (int i = 0; i < lists[0].size; i++) {
+            int slot = lists[0].values[i];
+            for (int l = 1; l < lists.length; l++) {
+                IntList list = lists[l];
+                while (cursors[l] < list.size && list.values[cursors[l]] < slot) {
+                    cursors[l]++;
+                }
+                if (cursors[l] == list.size) {
+                    break candidates;
+                }
+                if (list.values[cursors[l]] != slot) {
+                    continue candidates;
+                }
+            }
+            // Trigrams can all be present without being contiguous; confirm
+            String key = state.keys.get(slot);
+            if (key != null && key.contains(q)) {
+                result.add(state.ids.get(slot));
+            }
+        }
+        return result;
+    }
+    
+    public synchronized boolean contains(String productId) {
+        return state.slotById.containsKey(productId);
+    }
+    
+    public synchronized int size() {
+        return state.slotById.size();
+    }
+    
+    private void compactIfNeeded() {
+        int live = state.slotById.size();
+        if (state.ids.size() - live > Math.max(live, 1024)) {
+            State fresh = new State(live);
+            for (int slot = 0; slot < state.ids.size(); slot++) {
+                if (state.ids.get(slot) != null) {
+                    fresh.add(state.ids.get(slot), state.keys.get(slot));
+                }
+            }
+            state = fresh;
+        }
+    }
+    
+    // Name and category in one string; the separator keeps grams from spanning both
+    private static String keyOf(Product product) {
+        return (product.getName() + "\n" + product.getCategory()).toLowerCase(Locale.ROOT);
+    }
+    
+    private static class State {
+        private final Map<String, IntList> postings = new HashMap<>();
+        private final Map<String, Integer> slotById;
+        // Indexed by slot; null once the slot is retired
+        private final List<String> ids;
+        private final List<String> keys;
+        
+        State(int capacity) {
+            slotById = new HashMap<>(capacity * 2);
+            ids = new ArrayList<>(capacity);
+            keys = new ArrayList<>(capacity);
+        }
+        
+        void add(String id, String key) {
+            int slot = ids.size();
+            ids.add(id);
+            keys.add(key);
+            slotById.put(id, slot);
+            
+            for (int start = 0; start < key.length(); start++) {
+                for (int len = 1; len <= MAX_GRAM && start + len <= key.length(); len++) {
+                    if (key.charAt(start + len - 1) == '\n') {
+                        break;
+                    }
+                    postings.computeIfAbsent(key.substring(start, start + len), g -> new IntList()).add(slot);
+                }
+            }
+        }
+        
+        void retire(int slot) {
+            ids.set(slot, null);
+            keys.set(slot, null);
+        }
+    }
+    
+    // Ascending slot list; slots are only ever appended in increasing order
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+        
+        void add(int value) {
+            // A gram repeated within one key would otherwise be listed twice
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
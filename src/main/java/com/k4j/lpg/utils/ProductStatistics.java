@@ -0,0 +1,152 @@
+package com.k4j.lpg.utils;
+
+import com.k4j.lpg.models.Product;
+import com.k4j.lpg.services.CategoryTotals;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableMap;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Dashboard KPIs over a product list, kept up to date as the list changes.
+ *
+ * Each product's contribution (counted, low stock, out of stock, stock
+ * value, category) is remembered when it enters the list. A list change
+ * adds or subtracts the contributions of the rows it touched, and a row
+ * changed in place (see {@link Product#setOnUpdated}) swaps its old
+ * contribution for the new one, so every update is O(1) per changed row
+ * rather than a rescan of the whole list. Rows are followed through that
+ * callback rather than property listeners, so counting a row never creates
+ * its JavaFX properties. A new KPI is one more field in
+ * {@link Contribution} and one line in {@link #apply}.
+ *
+ * Like the list it watches, this must only be used on the FX thread.
+ */
+public class ProductStatistics {
+    
+    private final ReadOnlyIntegerWrapper totalProducts = new ReadOnlyIntegerWrapper();
+    private final ReadOnlyIntegerWrapper lowStock = new ReadOnlyIntegerWrapper();
+    private final ReadOnlyIntegerWrapper outOfStock = new ReadOnlyIntegerWrapper();
+    private final ReadOnlyDoubleWrapper stockValue = new ReadOnlyDoubleWrapper();
+    private final ObservableMap<String, CategoryTotals> categories = FXCollections.observableHashMap();
+    
+    // Product does not define equals, so rows are tracked by identity
+    private final Map<Product, Contribution> tracked = new IdentityHashMap<>();
+    private final Consumer<Product> onUpdated = this::updated;
+    
+    public ProductStatistics(ObservableList<Product> products) {
+        products.forEach(this::track);
+        products.addListener((ListChangeListener<Product>) change -> {
+            while (change.next()) {
+                if (change.wasPermutated() || change.wasUpdated()) {
+                    // Same rows; value changes arrive through onUpdated
+                    continue;
+                }
+                change.getRemoved().forEach(this::untrack);
+                change.getAddedSubList().forEach(this::track);
+            }
+        });
+    }
+    
+    public ReadOnlyIntegerProperty totalProductsProperty() {
+        return totalProducts.getReadOnlyProperty();
+    }
+    
+    public ReadOnlyIntegerProperty lowStockProperty() {
+        return lowStock.getReadOnlyProperty();
+    }
+    
+    public ReadOnlyIntegerProperty outOfStockProperty() {
+        return outOfStock.getReadOnlyProperty();
+    }
+    
+    /**
+     * Sum of quantity times price.
+     */
+    public ReadOnlyDoubleProperty stockValueProperty() {
+        return stockValue.getReadOnlyProperty();
+    }
+    
+    /**
+     * Totals per category; categories with no products are dropped.
+     */
+    public ObservableMap<String, CategoryTotals> getCategoryTotals() {
+        return FXCollections.unmodifiableObservableMap(categories);
+    }
+    
+    private void track(Product product) {
+        if (tracked.containsKey(product)) {
+            return;
+        }
+        Contribution contribution = new Contribution(product);
+        tracked.put(product, contribution);
+        apply(contribution, 1);
+        product.setOnUpdated(onUpdated);
+    }
+    
+    private void untrack(Product product) {
+        Contribution contribution = tracked.remove(product);
+        if (contribution == null) {
+            return;
+        }
+        if (product.getOnUpdated() == onUpdated) {
+            product.setOnUpdated(null);
+        }
+        apply(contribution, -1);
+    }
+    
+    private void updated(Product product) {
+        Contribution previous = tracked.get(product);
+        if (previous == null) {
+            return;
+        }
+        Contribution next = new Contribution(product);
+        apply(previous, -1);
+        apply(next, 1);
+        tracked.put(product, next);
+    }
+    
+    private void apply(Contribution c, int sign) {
+        totalProducts.set(totalProducts.get() + sign);
+        if (c.lowStock) {
+            lowStock.set(lowStock.get() + sign);
+        }
+        if (c.outOfStock) {
+            outOfStock.set(outOfStock.get() + sign);
+        }
+        // Back to exactly zero when empty, so float rounding cannot show as -0.00
+        stockValue.set(totalProducts.get() == 0 ? 0 : stockValue.get() + sign * c.value);
+        
+        CategoryTotals next = categories.getOrDefault(c.category, CategoryTotals.EMPTY).plus(sign, c.quantity, c.value);
+        if (next.getProducts() == 0) {
+            categories.remove(c.category);
+        } else {
+            categories.put(c.category, next);
+        }
+    }
+    
+    // What one product adds to the totals
+    private static class Contribution {
+        private final String category;
+        private final int quantity;
+        private final double value;
+        private final boolean lowStock;
+        private final boolean outOfStock;
+        
+        Contribution(Product product) {
+            category = product.getCategory() != null ? product.getCategory() : "";
+            quantity = product.getQuantity();
+            value = quantity * product.getPrice();
+            lowStock = product.isLowStock();
+            outOfStock = quantity <= 0;
+        }
+    }
+}
@@ -20,6 +20,9 @@ public class SessionManager {
     private static final String PREF_USERNAME = "username";
     private static final String PREF_USER_ROLE = "user_role";
     
+    // Tokens from a local (offline) sign-in; the server does not accept them
+    public static final String LOCAL_TOKEN_PREFIX = "local_";
+    
     private final Preferences prefs;
     
     private String accessToken;
@@ -89,6 +92,13 @@ public class SessionManager {
         return accessToken != null && currentUser != null;
     }
     
+    /**
+     * Check if the access token was issued by the server rather than a local sign-in
+     */
+    public boolean hasServerToken() {
+        return accessToken != null && !accessToken.startsWith(LOCAL_TOKEN_PREFIX);
+    }
+    
     // Getters
     public String getAccessToken() {
         return accessToken;
@@ -0,0 +1,195 @@
+package com.k4j.lpg.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one HttpClient used for every call to the server.
+ *
+ * A single client means a single connection pool: requests to the Supabase
+ * host share one HTTP/2 connection (or a few kept-alive HTTP/1.1 ones)
+ * instead of each service paying for its own TCP and TLS handshakes.
+ * Idle connections are kept for Config.HTTP_KEEPALIVE_SECONDS, longer than
+ * the connectivity probe interval, so the probe itself keeps the connection
+ * warm.
+ *
+ * The JDK client does not expose connection identity, so the metrics count
+ * TLS sessions, not connections: a session not seen before means a full
+ * handshake, a known one means either a reused connection or a new one that
+ * resumed the session. Only the handshake count is exact; plain-HTTP
+ * responses carry no session and are counted separately.
+ */
+public class SharedHttpClient {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SharedHttpClient.class);
+    
+    // Recently seen TLS sessions, enough to cover every live connection
+    private static final int TRACKED_SESSIONS = 64;
+    
+    private static final ExecutorService executor;
+    private static final HttpClient client;
+    
+    static {
+        // Read once when the JDK HTTP client initializes, so set before building it
+        String keepAlive = String.valueOf(Config.HTTP_KEEPALIVE_SECONDS);
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", keepAlive);
+        }
+        if (System.getProperty("jdk.httpclient.keepalive.timeout.h2") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout.h2", keepAlive);
+        }
+        
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "k4j-http-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(Config.HTTP_CONNECT_TIMEOUT_SECONDS))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+    
+    // Metrics
+    private static final AtomicLong responses = new AtomicLong();
+    private static final AtomicLong http2Responses = new AtomicLong();
+    private static final AtomicLong plainResponses = new AtomicLong();
+    private static final AtomicLong newSessions = new AtomicLong();
+    private static final AtomicLong knownSessions = new AtomicLong();
+    private static final Map<String, Boolean> seenSessions = new LinkedHashMap<>(TRACKED_SESSIONS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > TRACKED_SESSIONS;
+        }
+    };
+    
+    private SharedHttpClient() {
+        // Static utility
+    }
+    
+    public static HttpClient get() {
+        return client;
+    }
+    
+    /**
+     * Count a completed response towards the protocol and TLS session metrics.
+     */
+    public static void recordResponse(HttpResponse<?> response) {
+        responses.incrementAndGet();
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            http2Responses.incrementAndGet();
+        }
+        
+        SSLSession session = response.sslSession().orElse(null);
+        if (session == null) {
+            plainResponses.incrementAndGet();
+            return;
+        }
+        String key = Base64.getEncoder().encodeToString(session.getId()) + ":" + session.getCreationTime();
+        boolean seen;
+        synchronized (seenSessions) {
+            seen = seenSessions.put(key, Boolean.TRUE) != null;
+        }
+        if (seen) {
+            knownSessions.incrementAndGet();
+        } else {
+            newSessions.incrementAndGet();
+        }
+    }
+    
+    public static ConnectionStats getStats() {
+        return new ConnectionStats(responses.get(), http2Responses.get(), plainResponses.get(),
+                newSessions.get(), knownSessions.get());
+    }
+    
+    /**
+     * Close pooled connections on application exit
+     */
+    public static void shutdown() {
+        logger.info("HTTP client closed: " + getStats());
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Point-in-time response and TLS session counters
+     */
+    public static class ConnectionStats {
+        private final long responses;
+        private final long http2Responses;
+        private final long plainResponses;
+        private final long newSessions;
+        private final long knownSessions;
+        
+        public ConnectionStats(long responses, long http2Responses, long plainResponses,
+                               long newSessions, long knownSessions) {
+            this.responses = responses;
+            this.http2Responses = http2Responses;
+            this.plainResponses = plainResponses;
+            this.newSessions = newSessions;
+            this.knownSessions = knownSessions;
+        }
+        
+        public long getResponses() {
+            return responses;
+        }
+        
+        public long getHttp2Responses() {
+            return http2Responses;
+        }
+        
+        /**
+         * Responses without TLS, which the session counters cannot see.
+         */
+        public long getPlainResponses() {
+            return plainResponses;
+        }
+        
+        /**
+         * Full TLS handshakes; a lower bound on connections opened.
+         */
+        public long getNewSessions() {
+            return newSessions;
+        }
+        
+        /**
+         * Responses on an already seen TLS session, whether over a reused
+         * connection or a new one that resumed the session.
+         */
+        public long getKnownSessions() {
+            return knownSessions;
+        }
+        
+        public double getSessionReuseRatio() {
+            long total = newSessions + knownSessions;
+            return total == 0 ? 0 : (double) knownSessions / total;
+        }
+        
+        @Override
+        public String toString() {
+            return "ConnectionStats{" +
+                    "responses=" + responses +
+                    ", http2=" + http2Responses +
+                    ", plain=" + plainResponses +
+                    ", newTlsSessions=" + newSessions +
+                    ", knownTlsSessions=" + knownSessions +
+                    String.format(", sessionReuseRatio=%.2f", getSessionReuseRatio()) +
+                    '}';
+        }
+    }
+}
@@ -1,5 +1,7 @@
 import { Hono } from "npm:hono";
 import { cors } from "npm:hono/cors";
+import { compress } from "npm:hono/compress";
+import { etag } from "npm:hono/etag";
 import { logger } from "npm:hono/logger";
 import { createClient } from "npm:@supabase/supabase-js@2";
 import * as kv from './kv_store.tsx';
@@ -9,6 +11,10 @@ const app = new Hono();
 // Middleware
 app.use('*', cors());
 app.use('*', logger(console.log));
+// Product sync: gzip the payload and answer repeat fetches with 304 Not Modified
+// (compress is registered first so the ETag is taken over the uncompressed body)
+app.use('/make-server-9f945771/products/changes', compress());
+app.use('/make-server-9f945771/products/changes', etag());
 
 // Initialize Supabase client
 const supabase = createClient(
@@ -177,6 +183,31 @@ app.get('/make-server-9f945771/products', async (c) => {
   }
 });
 
+// Get products changed since a watermark (epoch millis), plus tombstones for deletes.
+// since=0 returns the full catalogue. The returned watermark is taken before reading
+// so rows written during the request are sent again next time rather than missed.
+app.get('/make-server-9f945771/products/changes', async (c) => {
+  try {
+    const since = Number(c.req.query('since') ?? '0') || 0;
+    const now = Date.now();
+
+    const products = (await kv.getByPrefix('product:'))
+      .filter((p: any) => since === 0 || Date.parse(p.updatedAt ?? p.createdAt ?? 0) > since);
+
+    const deleted = since === 0 ? [] : (await kv.getByPrefix('tombstone:product:'))
+      .filter((t: any) => t.deletedAt > since)
+      .map((t: any) => t.id);
+
+    // With nothing new, keep the caller's watermark so the body (and its ETag) repeats
+    const watermark = since !== 0 && products.length === 0 && deleted.length === 0 ? since : now;
+
+    return c.json({ success: true, products, deleted, watermark, full: since === 0 });
+  } catch (error) {
+    console.log('Get product changes error:', error);
+    return c.json({ error: `Failed to get product changes: ${error.message}` }, 500);
+  }
+});
+
 // Add new product
 app.post('/make-server-9f945771/products', async (c) => {
   try {
@@ -267,6 +298,8 @@ app.delete('/make-server-9f945771/products/:id', async (c) => {
 
     const productId = c.req.param('id');
     await kv.del(`product:${productId}`);
+    // Keep a tombstone so delta sync clients learn about the delete
+    await kv.set(`tombstone:product:${productId}`, { id: productId, deletedAt: Date.now() });
 
     return c.json({ success: true, message: 'Product deleted successfully' });
 
@@ -276,6 +309,134 @@ app.delete('/make-server-9f945771/products/:id', async (c) => {
   }
 });
 
+// Add delta to a product's stored quantity. The KV store has no atomic
+// increment, so this is a read-modify-write on the server, but it merges
+// relative changes instead of overwriting with a client's absolute value.
+// A key that was already applied makes the call a no-op, so a client may
+// resend an adjustment whose response it never received. Replayed offline
+// adjustments already happened on the shop floor, so they may take stock
+// below zero (to be corrected by a recount) rather than being rejected.
+async function applyAdjustment(productId: string, delta: number, key?: string, allowNegative = false) {
+  if (key && await kv.get(`adjustment:${key}`)) {
+    return { product: await kv.get(`product:${productId}`), duplicate: true };
+  }
+
+  const existingProduct = await kv.get(`product:${productId}`);
+  if (!existingProduct) {
+    throw new Error('Product not found');
+  }
+  const quantity = (Number(existingProduct.quantity) || 0) + delta;
+  if (quantity < 0 && !allowNegative) {
+    throw new Error('Insufficient stock');
+  }
+
+  const product = { ...existingProduct, quantity, updatedAt: new Date().toISOString() };
+  await kv.set(`product:${productId}`, product);
+  if (key) {
+    await kv.set(`adjustment:${key}`, { productId, delta, appliedAt: Date.now() });
+  }
+  return { product, duplicate: false };
+}
+
+// Adjust product quantity by a relative amount (any signed-in user)
+app.post('/make-server-9f945771/products/:id/adjust', async (c) => {
+  try {
+    const accessToken = c.req.header('Authorization')?.split(' ')[1];
+    const { data: { user }, error: authError } = await supabase.auth.getUser(accessToken);
+
+    if (authError || !user) {
+      return c.json({ error: 'Unauthorized' }, 401);
+    }
+
+    const productId = c.req.param('id');
+    const { delta, key } = await c.req.json();
+    if (!Number.isInteger(delta)) {
+      return c.json({ error: 'delta must be an integer' }, 400);
+    }
+
+    const { product } = await applyAdjustment(productId, delta, key);
+    return c.json({ success: true, product });
+
+  } catch (error) {
+    console.log('Adjust product error:', error);
+    const status = error.message === 'Product not found' ? 404 : error.message === 'Insufficient stock' ? 409 : 500;
+    return c.json({ error: `Failed to adjust product: ${error.message}` }, status);
+  }
+});
+
+// Apply a batch of offline product mutations from a client outbox.
+// Body: { operations: [{ op: 'upsert', product: {...} } | { op: 'delete', id }
+//                      | { op: 'adjust', id, delta, key }] }
+// An upsert never changes the quantity; stock only moves through 'adjust'.
+// Each operation succeeds or fails on its own; results are returned in order.
+app.post('/make-server-9f945771/products/batch', async (c) => {
+  try {
+    const accessToken = c.req.header('Authorization')?.split(' ')[1];
+    const { data: { user }, error: authError } = await supabase.auth.getUser(accessToken);
+
+    if (authError || !user) {
+      return c.json({ error: 'Unauthorized' }, 401);
+    }
+
+    const userData = await kv.get(`user:${user.id}`);
+    const isAdmin = userData?.role === 'admin';
+    const { operations } = await c.req.json();
+    const results = [];
+
+    for (const operation of operations ?? []) {
+      const productId = operation.op === 'delete' || operation.op === 'adjust' ? operation.id : operation.product?.id;
+      try {
+        if (!productId) {
+          results.push({ id: null, success: false, error: 'Missing product id' });
+          continue;
+        }
+
+        if (operation.op === 'delete') {
+          if (!isAdmin) {
+            results.push({ id: productId, success: false, error: 'Admin access required' });
+            continue;
+          }
+          await kv.del(`product:${productId}`);
+          await kv.set(`tombstone:product:${productId}`, { id: productId, deletedAt: Date.now() });
+        } else if (operation.op === 'adjust') {
+          if (!Number.isInteger(operation.delta)) {
+            results.push({ id: productId, success: false, error: 'delta must be an integer' });
+            continue;
+          }
+          await applyAdjustment(productId, operation.delta, operation.key, true);
+        } else {
+          const existingProduct = await kv.get(`product:${productId}`);
+          // Creating a product needs admin rights, same as POST /products
+          if (!existingProduct && !isAdmin) {
+            results.push({ id: productId, success: false, error: 'Admin access required' });
+            continue;
+          }
+          const now = new Date().toISOString();
+          const { quantity: _quantity, ...fields } = operation.product;
+          await kv.set(`product:${productId}`, {
+            quantity: 0,
+            ...existingProduct,
+            ...fields,
+            id: productId,
+            createdAt: existingProduct?.createdAt ?? now,
+            updatedAt: now,
+          });
+          await kv.del(`tombstone:product:${productId}`);
+        }
+        results.push({ id: productId, success: true });
+      } catch (error) {
+        results.push({ id: productId, success: false, error: error.message });
+      }
+    }
+
+    return c.json({ success: true, results });
+
+  } catch (error) {
+    console.log('Product batch error:', error);
+    return c.json({ error: `Failed to apply product batch: ${error.message}` }, 500);
+  }
+});
+
 // ============================================
 // USER MANAGEMENT ROUTES (Admin only)
 // ============================================